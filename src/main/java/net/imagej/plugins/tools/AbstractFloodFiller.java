@@ -0,0 +1,138 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2016 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.plugins.tools;
+
+import net.imagej.DrawingTool;
+
+/**
+ * Base class of the flood fill engines of this package. It holds the settings
+ * they have in common and lets a running fill be cancelled from another
+ * thread. The fill values and UV axes are taken from the given
+ * {@link DrawingTool}.
+ */
+public abstract class AbstractFloodFiller {
+
+	// -- instance variables --
+
+	private final DrawingTool tool;
+	private FillTolerance tolerance = FillTolerance.EXACT;
+	private DirtyRegion dirtyRegion;
+	private UndoJournal journal;
+	private volatile boolean cancelled;
+
+	// -- constructor --
+
+	protected AbstractFloodFiller(final DrawingTool tool) {
+		this.tool = tool;
+	}
+
+	// -- public interface --
+
+	/**
+	 * Fills the region connected to the seed point (u0,v0) of the plane at the
+	 * given position. The connectivity is the number of neighbors of a pixel;
+	 * planar fillers support 4 and 8 while volumetric ones support 6, 18 and 26.
+	 * 
+	 * @throws IllegalArgumentException if the connectivity is not supported
+	 */
+	public abstract void fill(long u0, long v0, long[] position,
+		int connectivity);
+
+	/** Gets the DrawingTool providing the fill values and UV axes. */
+	public DrawingTool getDrawingTool() {
+		return tool;
+	}
+
+	/** Sets how far pixels may differ from the seed pixel and still be filled. */
+	public void setTolerance(final FillTolerance tolerance) {
+		this.tolerance = tolerance;
+	}
+
+	/** Gets how far pixels may differ from the seed pixel and still be filled. */
+	public FillTolerance getTolerance() {
+		return tolerance;
+	}
+
+	/**
+	 * Sets the region that is grown to cover every pixel the fill writes. May
+	 * be null if nobody is interested.
+	 */
+	public void setDirtyRegion(final DirtyRegion region) {
+		dirtyRegion = region;
+	}
+
+	/** Gets the region grown to cover every pixel the fill writes. */
+	public DirtyRegion getDirtyRegion() {
+		return dirtyRegion;
+	}
+
+	/**
+	 * Sets the journal that records the original value of every pixel the fill
+	 * writes. May be null if the fill need not be undone.
+	 */
+	public void setJournal(final UndoJournal journal) {
+		this.journal = journal;
+	}
+
+	/** Gets the journal recording the pixels the fill writes. */
+	public UndoJournal getJournal() {
+		return journal;
+	}
+
+	/**
+	 * Asks a running fill to stop as soon as possible. Pixels filled up to that
+	 * point stay filled.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/** Returns true if this filler has been cancelled. */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	// -- helpers --
+
+	/**
+	 * Returns an accessor of the plane at the given position that reports its
+	 * writes to the dirty region and the journal.
+	 */
+	protected PlaneAccessor createAccessor(final long[] position) {
+		final PlaneAccessor access = new PlaneAccessor(tool.getDataset(),
+			tool.getUAxis(), tool.getVAxis(), position);
+		access.setDirtyRegion(dirtyRegion);
+		access.setJournal(journal);
+		return access;
+	}
+
+}
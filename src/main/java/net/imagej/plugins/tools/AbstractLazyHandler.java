@@ -0,0 +1,93 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2016 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.plugins.tools;
+
+import org.scijava.tool.AbstractTool;
+
+/**
+ * Base class for always active tools with costly state, such as buffers or
+ * tables, that they build on demand. Such a tool is created with every
+ * context, but most sessions never send it an event it acts on, so it builds
+ * that state in {@link #initialize()} the first time it needs it. Services are
+ * injected as usual, since the context creates them regardless. The time
+ * initialization takes is logged at debug level.
+ */
+public abstract class AbstractLazyHandler extends AbstractTool {
+
+	private volatile boolean initialized;
+
+	// -- Tool methods --
+
+	@Override
+	public boolean isAlwaysActive() {
+		return true;
+	}
+
+	// -- AbstractLazyHandler methods --
+
+	/** Returns true if this handler has been initialized. */
+	public boolean isInitialized() {
+		return initialized;
+	}
+
+	// -- internal methods --
+
+	/**
+	 * Builds the state this handler needs. Called by
+	 * {@link #ensureInitialized()}, once, and again after each
+	 * {@link #invalidate()}.
+	 */
+	protected abstract void initialize();
+
+	/**
+	 * Marks the state of this handler as out of date, so that it is built anew
+	 * the next time it is needed.
+	 */
+	protected void invalidate() {
+		initialized = false;
+	}
+
+	/** Initializes this handler if that has not been done yet. */
+	protected void ensureInitialized() {
+		if (initialized) return;
+		synchronized (this) {
+			if (initialized) return;
+			final long start = System.nanoTime();
+			initialize();
+			initialized = true;
+			final long micros = (System.nanoTime() - start) / 1000;
+			log().debug(getClass().getSimpleName() + " initialized in " + micros +
+				" us");
+		}
+	}
+
+}
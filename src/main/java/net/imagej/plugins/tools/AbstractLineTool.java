@@ -31,30 +31,51 @@
 
 package net.imagej.plugins.tools;
 
+import java.io.IOException;
+
 import net.imagej.ChannelCollection;
 import net.imagej.Dataset;
 import net.imagej.DrawingTool;
 import net.imagej.display.ImageCanvas;
 import net.imagej.display.ImageDisplay;
 import net.imagej.display.ImageDisplayService;
-import net.imagej.event.DatasetUpdatedEvent;
 import net.imagej.options.OptionsChannels;
 import net.imagej.render.RenderingService;
 
+import org.scijava.display.Display;
+import org.scijava.display.event.input.KyPressedEvent;
 import org.scijava.display.event.input.MsButtonEvent;
 import org.scijava.display.event.input.MsDraggedEvent;
 import org.scijava.display.event.input.MsPressedEvent;
 import org.scijava.display.event.input.MsReleasedEvent;
 import org.scijava.event.EventService;
+import org.scijava.input.KeyCode;
 import org.scijava.options.OptionsService;
 import org.scijava.plugin.Parameter;
+import org.scijava.prefs.PrefService;
+import org.scijava.thread.ThreadService;
 import org.scijava.tool.AbstractTool;
 import org.scijava.util.IntCoords;
+import org.scijava.util.LongArray;
 import org.scijava.util.RealCoords;
 
 /**
  * Abstract class that is used by PencilTool, PaintBrushTool, and their erase
  * modes to draw lines into a dataset using fg/bg values.
+ * <p>
+ * Strokes are drawn by moving a cached {@link BrushStamp} of the line width
+ * along the lines of the stroke. The pixels a stroke overwrites are recorded in
+ * an {@link UndoJournal}, which joins the dataset's history in the
+ * {@link UndoService} when the stroke ends. Pressing Escape or the right mouse
+ * button while drawing cancels the stroke, restoring those pixels from the
+ * journal.
+ * </p>
+ * <p>
+ * Drag events are not drawn one by one. Their points are queued and drawn in
+ * a batch followed by a single display update, at most once per frame of the
+ * configured frame rate. Points still queued when the mouse rests are drawn by
+ * a trailing update at the end of the frame.
+ * </p>
  * 
  * @author Barry DeZonia
  */
@@ -74,8 +95,39 @@ public abstract class AbstractLineTool extends AbstractTool {
 	@Parameter(required = false)
 	private EventService eventService;
 
+	@Parameter(required = false)
+	private ThreadService threadService;
+
+	@Parameter
+	private UndoService undoService;
+
+	@Parameter(required = false)
+	private PrefService prefService;
+
 	private DrawingTool drawingTool;
 	private long lineWidth = 1;
+	private int frameRate = 30;
+
+	/** Model coordinates of the drag points not drawn yet, as (x, y) pairs. */
+	private final LongArray pendingPoints = new LongArray();
+	private Display<?> strokeDisplay;
+	private long lastFrameTime;
+	private boolean frameScheduled;
+
+	/** Bounds of the pixels drawn by the current stroke. */
+	private DirtyRegion strokeRegion;
+	private long[] strokePosition;
+	private long lastX, lastY;
+	private UndoJournal strokeJournal;
+
+	// per stroke drawing state
+	private BrushStamp stamp;
+	private PlaneAccessor access;
+	private double[] values;
+	private long stampX, stampY;
+	private boolean stamped;
+
+	private boolean settingsLoaded;
 
 	// -- public interface --
 
@@ -90,9 +142,48 @@ public abstract class AbstractLineTool extends AbstractTool {
 		return lineWidth;
 	}
 
-	/** On mouse down the start point of a series of lines is established. */
+	/**
+	 * Sets the maximum number of times per second the display is updated while
+	 * a stroke is drawn.
+	 */
+	public void setFrameRate(final int fps) {
+		if (fps < 1) frameRate = 1;
+		else frameRate = fps;
+	}
+
+	/**
+	 * Gets the maximum number of times per second the display is updated while
+	 * a stroke is drawn.
+	 */
+	public int getFrameRate() {
+		return frameRate;
+	}
+
+	/**
+	 * Stores this tool's settings with the {@link PrefService} so that later
+	 * sessions start with them.
+	 */
+	public void saveSettings() {
+		writeSettings(new ToolSettings(prefService, getClass()));
+	}
+
+	/** On activation the stored settings are loaded, the first time only. */
+	@Override
+	public void activate() {
+		loadSettings();
+	}
+
+	/**
+	 * On mouse down the start point of a series of lines is established. A
+	 * right click while drawing cancels the stroke.
+	 */
 	@Override
 	public void onMouseDown(final MsPressedEvent evt) {
+		if (drawingTool != null && evt.getButton() == MsButtonEvent.RIGHT_BUTTON) {
+			cancelStroke();
+			evt.consume();
+			return;
+		}
 		if (evt.getButton() != MsButtonEvent.LEFT_BUTTON) return;
 		if (!(evt.getDisplay() instanceof ImageDisplay)) return;
 		initDrawingTool(evt);
@@ -104,26 +195,47 @@ public abstract class AbstractLineTool extends AbstractTool {
 			RealCoords realCoords = canv.panelToDataCoords(panelCoords);
 			long modelX = realCoords.getLongX();
 			long modelY = realCoords.getLongY();
-			drawingTool.moveTo(modelX, modelY);
+			strokeJournal = new UndoJournal();
+			startStroke(drawingTool, strokePosition, modelX, modelY);
+			lastX = modelX;
+			lastY = modelY;
+			pendingPoints.clear();
+			strokeDisplay = disp;
+			lastFrameTime = 0;
 		}
 		evt.consume();
 	}
 
-	/** On mouse up all resources are freed. */
+	/**
+	 * On mouse up all resources are freed and an update of the region drawn by
+	 * the stroke is published.
+	 */
 	@Override
 	public void onMouseUp(final MsReleasedEvent evt) {
 		if (evt.getButton() != MsButtonEvent.LEFT_BUTTON) return;
 		if (drawingTool != null) {
+			drawPending();
 			Dataset dataset = drawingTool.getDataset();
-			if (eventService != null) {
-				eventService.publish(new DatasetUpdatedEvent(dataset, false));
+			if (eventService != null && !strokeRegion.isEmpty()) {
+				eventService.publish(new DatasetRegionUpdatedEvent(dataset,
+					strokeRegion.getInterval()));
 			}
-			drawingTool = null;
+			endStroke();
+			undoService.push(dataset, strokeJournal);
+			clearStroke();
 		}
 		evt.consume();
 	}
 
-	/** On mouse drag a series of lines are drawn. */
+	/** Cancels the stroke being drawn when Escape is pressed. */
+	@Override
+	public void onKeyDown(final KyPressedEvent evt) {
+		if (drawingTool == null || evt.getCode() != KeyCode.ESCAPE) return;
+		cancelStroke();
+		evt.consume();
+	}
+
+	/** On mouse drag a series of lines are queued for drawing. */
 	@Override
 	public void onMouseDrag(final MsDraggedEvent evt) {
 		if (drawingTool == null) return;
@@ -134,13 +246,201 @@ public abstract class AbstractLineTool extends AbstractTool {
 		RealCoords realCoords = canv.panelToDataCoords(panelCoords);
 		long modelX = realCoords.getLongX();
 		long modelY = realCoords.getLongY();
-		drawingTool.lineTo(modelX, modelY);
-		evt.getDisplay().update();
+		pendingPoints.addValue(modelX);
+		pendingPoints.addValue(modelY);
+		if (System.currentTimeMillis() - lastFrameTime >= frameInterval()) {
+			drawPending();
+		}
+		else scheduleFrame();
 		evt.consume();
 	}
 
+	// -- internal methods --
+
+	/** Gets the shape of the stamp strokes are drawn with. */
+	protected BrushStamp.Shape getStampShape() {
+		return BrushStamp.Shape.CIRCLE;
+	}
+
+	/** Gets the journal recording the pixels the current stroke overwrites. */
+	protected UndoJournal getStrokeJournal() {
+		return strokeJournal;
+	}
+
+	/**
+	 * Begins a stroke at (x,y) of the plane at the given position. The default
+	 * implementation prepares the stamp of the line width.
+	 */
+	protected void startStroke(final DrawingTool tool, final long[] position,
+		final long x, final long y)
+	{
+		stamp = BrushStamp.get(getStampShape(), (int) Math.min(getLineWidth(),
+			Integer.MAX_VALUE));
+		access = new PlaneAccessor(tool.getDataset(), tool.getUAxis(),
+			tool.getVAxis(), position);
+		access.setJournal(strokeJournal);
+		access.setWriteCombining(true);
+		values = access.pixelValues(tool.getChannels());
+		stampX = x;
+		stampY = y;
+		stamped = false;
+	}
+
+	/**
+	 * Draws a line from the last point of the stroke to (x,y). The default
+	 * implementation moves the stamp along it.
+	 */
+	protected void strokeTo(final DrawingTool tool, final long x, final long y) {
+		// NB - the stamp at the start of the stroke is drawn once it moves
+		if (!stamped) {
+			stamp.stamp(access, stampX, stampY, values);
+			stamped = true;
+		}
+		stamp.stampLine(access, stampX, stampY, x, y, values);
+		stampX = x;
+		stampY = y;
+	}
+
+	/**
+	 * Ends the current stroke. The default implementation writes what is still
+	 * buffered and frees the stamp.
+	 */
+	protected void endStroke() {
+		if (access != null) {
+			access.flush();
+			final CellWriteBuffer buffer = access.getWriteBuffer();
+			if (buffer != null) {
+				log().debug("Stroke cell writes: " + buffer.getCellHits() +
+					" hits, " + buffer.getCellMisses() + " misses");
+			}
+		}
+		stamp = null;
+		access = null;
+		values = null;
+	}
+
+	/** Loads the stored settings of this tool if that has not been done yet. */
+	protected void loadSettings() {
+		if (settingsLoaded) return;
+		settingsLoaded = true;
+		readSettings(new ToolSettings(prefService, getClass()));
+	}
+
+	/** Sets this tool's settings from the stored values. */
+	protected void readSettings(final ToolSettings settings) {
+		setLineWidth(settings.getLong("lineWidth", lineWidth));
+		setFrameRate(settings.getInt("frameRate", frameRate));
+	}
+
+	/** Stores this tool's settings. */
+	protected void writeSettings(final ToolSettings settings) {
+		settings.put("lineWidth", lineWidth);
+		settings.put("frameRate", frameRate);
+	}
+
 	// -- private helpers --
 
+	/**
+	 * Ends the current stroke by restoring the pixels it drew from its journal.
+	 * The rest of the stroke, up to the mouse release, is ignored.
+	 */
+	private void cancelStroke() {
+		pendingPoints.clear();
+		endStroke();
+		final Dataset dataset = drawingTool.getDataset();
+		try {
+			strokeJournal.restore(dataset);
+		}
+		catch (final IOException e) {
+			log().error("Cannot cancel stroke", e);
+		}
+		strokeJournal.dispose();
+		strokeDisplay.update();
+		if (eventService != null && !strokeRegion.isEmpty()) {
+			eventService.publish(new DatasetRegionUpdatedEvent(dataset,
+				strokeRegion.getInterval()));
+		}
+		clearStroke();
+	}
+
+	/** Frees the resources of the current stroke. */
+	private void clearStroke() {
+		strokeJournal = null;
+		drawingTool = null;
+		strokeRegion = null;
+		strokePosition = null;
+		strokeDisplay = null;
+	}
+
+	/** Returns the minimum number of milliseconds between display updates. */
+	private long frameInterval() {
+		return 1000 / frameRate;
+	}
+
+	/**
+	 * Draws the lines through the queued points and updates the display once if
+	 * there were any.
+	 */
+	private void drawPending() {
+		if (drawingTool == null || pendingPoints.size() == 0) return;
+		for (int i = 0; i < pendingPoints.size(); i += 2) {
+			final long x = pendingPoints.getValue(i);
+			final long y = pendingPoints.getValue(i + 1);
+			strokeTo(drawingTool, x, y);
+			includeSegment(lastX, lastY, x, y);
+			lastX = x;
+			lastY = y;
+		}
+		pendingPoints.clear();
+		if (access != null) access.flush();
+		strokeDisplay.update();
+		lastFrameTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * Makes sure the queued points get drawn at the end of the current frame
+	 * even if no other drag event arrives.
+	 */
+	private void scheduleFrame() {
+		if (frameScheduled || threadService == null) return;
+		frameScheduled = true;
+		final long delay =
+			lastFrameTime + frameInterval() - System.currentTimeMillis();
+		threadService.run(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					if (delay > 0) Thread.sleep(delay);
+				}
+				catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				// NB - draw on the dispatch thread like the mouse events do
+				threadService.queue(new Runnable() {
+
+					@Override
+					public void run() {
+						frameScheduled = false;
+						drawPending();
+					}
+				});
+			}
+		});
+	}
+
+	/** Grows the stroke region to cover a line drawn from (x0,y0) to (x1,y1). */
+	private void includeSegment(final long x0, final long y0, final long x1,
+		final long y1)
+	{
+		// NB - wide lines are drawn centered on the segment
+		final long pad = lineWidth > 1 ? (lineWidth + 1) / 2 : 0;
+		strokeRegion.includePlaneBox(drawingTool.getDataset(), strokePosition,
+			drawingTool.getUAxis(), drawingTool.getVAxis(), Math.min(x0, x1) - pad,
+			Math.min(y0, y1) - pad, Math.max(x0, x1) + pad, Math.max(y0, y1) + pad,
+			true);
+	}
+
 	/** Allocates and initializes a DrawingTool if possible. */
 	private void initDrawingTool(final MsPressedEvent evt) {
 
@@ -171,6 +471,8 @@ public abstract class AbstractLineTool extends AbstractTool {
 		for (int i = 0; i < currPos.length; i++)
 			currPos[i] = imageDisplay.getLongPosition(i);
 		drawingTool.setPosition(currPos);
+		strokePosition = currPos;
+		strokeRegion = new DirtyRegion(currPos.length);
 
 		// TODO - change here to make this work on any two arbitrary axes
 		drawingTool.setUAxis(0);
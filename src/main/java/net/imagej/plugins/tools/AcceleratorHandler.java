@@ -32,7 +32,6 @@
 package net.imagej.plugins.tools;
 
 import org.scijava.Priority;
-import org.scijava.command.CommandService;
 import org.scijava.display.event.input.KyPressedEvent;
 import org.scijava.input.Accelerator;
 import org.scijava.input.InputModifiers;
@@ -73,9 +72,6 @@ public class AcceleratorHandler extends AbstractTool {
 	@Parameter
 	private ModuleService moduleService;
 
-	@Parameter
-	private CommandService commandService;
-
 	@Override
 	public boolean isAlwaysActive() {
 		return true;
@@ -31,24 +31,141 @@
 
 package net.imagej.plugins.tools;
 
+import java.util.Collections;
+
+import net.imagej.display.ImageCanvas;
+import net.imagej.display.ImageDisplay;
+import net.imagej.display.OverlayService;
+import net.imagej.overlay.LineOverlay;
+import net.imagej.overlay.Overlay;
+import net.imglib2.FinalRealInterval;
+import net.imglib2.RealPoint;
+
+import org.scijava.display.event.input.MsButtonEvent;
+import org.scijava.display.event.input.MsDraggedEvent;
+import org.scijava.display.event.input.MsEvent;
+import org.scijava.display.event.input.MsPressedEvent;
+import org.scijava.display.event.input.MsReleasedEvent;
+import org.scijava.event.EventService;
+import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
 import org.scijava.tool.AbstractTool;
 import org.scijava.tool.Tool;
+import org.scijava.util.IntCoords;
+import org.scijava.util.RealCoords;
 
 /**
- * TODO
+ * Tool implementation for arrows. Dragging draws an arrow from the point
+ * where the mouse went down to the point where it is released. Each arrow is a
+ * {@link LineOverlay} with an arrow head at its end, so its geometry is just
+ * its two end points. While an arrow is being dragged only its overlay is
+ * invalidated, within the bounds of its old and new positions; the dataset is
+ * not updated at all.
  * 
  * @author Rick Lentz
  * @author Grant Harris
  * @author Curtis Rueden
  */
 @Plugin(type = Tool.class, name = "Arrow", description = "Arrow Tool",
-	iconPath = "/icons/tools/arrow.png", priority = ArrowTool.PRIORITY,
-	enabled = false)
+	iconPath = "/icons/tools/arrow.png", priority = ArrowTool.PRIORITY)
 public class ArrowTool extends AbstractTool {
 
 	public static final double PRIORITY = -305;
 
-	// TODO
+	/** Size (in screen pixels) reserved around an arrow for its head. */
+	private static final double HEAD_SIZE = 16;
+
+	// -- instance variables --
+
+	@Parameter
+	private OverlayService overlayService;
+
+	@Parameter(required = false)
+	private EventService eventService;
+
+	// the arrow being drawn
+	private ImageDisplay display;
+	private LineOverlay arrow;
+	private double startX, startY, endX, endY;
+
+	// -- Tool methods --
+
+	/** On mouse down the start point of an arrow is established. */
+	@Override
+	public void onMouseDown(final MsPressedEvent evt) {
+		if (evt.getButton() != MsButtonEvent.LEFT_BUTTON) return;
+		if (!(evt.getDisplay() instanceof ImageDisplay)) return;
+		display = (ImageDisplay) evt.getDisplay();
+		arrow = null;
+		final RealCoords coords = dataCoords(evt);
+		startX = endX = coords.x;
+		startY = endY = coords.y;
+		evt.consume();
+	}
+
+	/** On mouse drag the end point of the arrow follows the mouse. */
+	@Override
+	public void onMouseDrag(final MsDraggedEvent evt) {
+		if (display == null) return;
+		final RealCoords coords = dataCoords(evt);
+		if (arrow == null) {
+			endX = coords.x;
+			endY = coords.y;
+			createArrow();
+		}
+		else {
+			final FinalRealInterval region = bounds(coords.x, coords.y);
+			endX = coords.x;
+			endY = coords.y;
+			arrow.setLineEnd(new RealPoint(endX, endY));
+			if (eventService != null) {
+				eventService.publish(new OverlayRegionUpdatedEvent(arrow, region));
+			}
+		}
+		evt.consume();
+	}
+
+	/** On mouse up the arrow is done. */
+	@Override
+	public void onMouseUp(final MsReleasedEvent evt) {
+		if (evt.getButton() != MsButtonEvent.LEFT_BUTTON) return;
+		if (display == null) return;
+		display = null;
+		arrow = null;
+		evt.consume();
+	}
+
+	// -- private helpers --
+
+	/** Adds an arrow overlay from the start to the end point to the display. */
+	private void createArrow() {
+		arrow = new LineOverlay(getContext());
+		arrow.setLineStart(new RealPoint(startX, startY));
+		arrow.setLineEnd(new RealPoint(endX, endY));
+		arrow.setLineEndArrowStyle(Overlay.ArrowStyle.ARROW);
+		// NB - adding the overlay repaints the display once
+		overlayService.addOverlays(display, Collections.singletonList(arrow));
+	}
+
+	/**
+	 * Returns the bounds of the current arrow and the arrow ending at (x,y),
+	 * with room for their heads.
+	 */
+	private FinalRealInterval bounds(final double x, final double y) {
+		final double pad = HEAD_SIZE / display.getCanvas().getZoomFactor();
+		final double[] min = new double[2];
+		final double[] max = new double[2];
+		min[0] = Math.min(startX, Math.min(endX, x)) - pad;
+		min[1] = Math.min(startY, Math.min(endY, y)) - pad;
+		max[0] = Math.max(startX, Math.max(endX, x)) + pad;
+		max[1] = Math.max(startY, Math.max(endY, y)) + pad;
+		return new FinalRealInterval(min, max);
+	}
+
+	/** Returns the data coordinates of the given mouse event. */
+	private RealCoords dataCoords(final MsEvent evt) {
+		final ImageCanvas canvas = display.getCanvas();
+		return canvas.panelToDataCoords(new IntCoords(evt.getX(), evt.getY()));
+	}
 
 }
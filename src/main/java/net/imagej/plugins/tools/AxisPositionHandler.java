@@ -51,7 +51,13 @@ import org.scijava.tool.Tool;
  * @author Grant Harris
  */
 @Plugin(type = Tool.class, name = "Axis Position Shortcuts")
-public class AxisPositionHandler extends AbstractTool {
+public class AxisPositionHandler extends AbstractTool implements KeyHandler {
+
+	private static final KeyCode[] KEY_CODES = { KeyCode.PERIOD,
+		KeyCode.GREATER, KeyCode.KP_RIGHT, KeyCode.RIGHT, KeyCode.COMMA,
+		KeyCode.LESS, KeyCode.KP_LEFT, KeyCode.LEFT };
+
+	private static final char[] KEY_CHARS = { '>', '<' };
 
 	@Override
 	public boolean isAlwaysActive() {
@@ -64,7 +70,17 @@ public class AxisPositionHandler extends AbstractTool {
 	}
 
 	@Override
-	public void onKeyDown(final KyPressedEvent evt) {
+	public KeyCode[] getKeyCodes() {
+		return KEY_CODES;
+	}
+
+	@Override
+	public char[] getKeyCharacters() {
+		return KEY_CHARS;
+	}
+
+	@Override
+	public void handleKey(final KyPressedEvent evt) {
 		final Display<?> display = evt.getDisplay();
 		if (!(display instanceof ImageDisplay)) return;
 		final ImageDisplay imageDisplay = (ImageDisplay) display;
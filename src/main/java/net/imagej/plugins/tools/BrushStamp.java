@@ -0,0 +1,267 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2016 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.plugins.tools;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Coverage mask of a paint brush tip, stored as horizontal runs of offsets
+ * from the brush center. Along with the full mask a stamp keeps, for each of
+ * the eight directions a Bresenham line can step in, the runs covered by the
+ * stamp after the step that the stamp before the step did not cover. Drawing a
+ * line thus only writes each pixel once no matter how wide the brush is.
+ * <p>
+ * Stamps are immutable and cached per shape and width; use
+ * {@link #get(Shape, int)} to obtain one.
+ * </p>
+ */
+public class BrushStamp {
+
+	/** The shapes a brush tip can have. */
+	public enum Shape {
+		CIRCLE, SQUARE
+	}
+
+	// -- constants --
+
+	/** The number of stamps kept in the cache. */
+	private static final int CACHE_SIZE = 16;
+
+	private static final Map<Long, BrushStamp> CACHE =
+		new LinkedHashMap<Long, BrushStamp>(CACHE_SIZE, 0.75f, true)
+		{
+
+			@Override
+			protected boolean removeEldestEntry(
+				final Map.Entry<Long, BrushStamp> eldest)
+			{
+				return size() > CACHE_SIZE;
+			}
+		};
+
+	// -- instance variables --
+
+	private final Shape shape;
+	private final int width;
+
+	/** (dv, du0, du1) triples covering the whole stamp. */
+	private final int[] runs;
+
+	/** Per step direction (dv, du0, du1) triples newly covered by the step. */
+	private final int[][] stepRuns = new int[9][];
+
+	// -- constructor --
+
+	private BrushStamp(final Shape shape, final int width) {
+		this.shape = shape;
+		this.width = width;
+		final int first = -(width - 1) / 2;
+		final int[] lo = new int[width];
+		final int[] hi = new int[width];
+		computeRows(first, lo, hi);
+		final int[] all = new int[3 * width];
+		int count = 0;
+		for (int r = 0; r < width; r++) {
+			if (lo[r] > hi[r]) continue;
+			all[count++] = first + r;
+			all[count++] = lo[r];
+			all[count++] = hi[r];
+		}
+		runs = trim(all, count);
+		for (int sy = -1; sy <= 1; sy++) {
+			for (int sx = -1; sx <= 1; sx++) {
+				if (sx == 0 && sy == 0) continue;
+				stepRuns[direction(sx, sy)] = difference(first, lo, hi, sx, sy);
+			}
+		}
+	}
+
+	// -- public interface --
+
+	/** Returns the stamp of the given shape and width (in pixels). */
+	public static BrushStamp get(final Shape shape, final int width) {
+		final int w = Math.max(width, 1);
+		final Long key = ((long) w << 1) | shape.ordinal();
+		synchronized (CACHE) {
+			BrushStamp stamp = CACHE.get(key);
+			if (stamp == null) {
+				stamp = new BrushStamp(shape, w);
+				CACHE.put(key, stamp);
+			}
+			return stamp;
+		}
+	}
+
+	/** Gets the shape of this stamp. */
+	public Shape getShape() {
+		return shape;
+	}
+
+	/** Gets the width of this stamp (in pixels). */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Sets the pixels covered by this stamp centered on (u,v) to the given
+	 * channel values. Pixels outside of the plane are ignored.
+	 */
+	public void stamp(final PlaneAccessor access, final long u, final long v,
+		final double[] values)
+	{
+		apply(runs, access, u, v, values);
+	}
+
+	/**
+	 * Sets the pixels covered by this stamp moved along the Bresenham line from
+	 * (u0,v0) to (u1,v1) to the given channel values. The pixels of the stamp
+	 * centered on (u0,v0) are assumed to be set already and are not written.
+	 */
+	public void stampLine(final PlaneAccessor access, final long u0,
+		final long v0, final long u1, final long v1, final double[] values)
+	{
+		final long dx = Math.abs(u1 - u0);
+		final long dy = -Math.abs(v1 - v0);
+		final int sx = u0 < u1 ? 1 : -1;
+		final int sy = v0 < v1 ? 1 : -1;
+		long err = dx + dy;
+		long u = u0, v = v0;
+		while (u != u1 || v != v1) {
+			final long e2 = 2 * err;
+			int stepX = 0, stepY = 0;
+			if (e2 >= dy) {
+				err += dy;
+				u += sx;
+				stepX = sx;
+			}
+			if (e2 <= dx) {
+				err += dx;
+				v += sy;
+				stepY = sy;
+			}
+			apply(stepRuns[direction(stepX, stepY)], access, u, v, values);
+		}
+	}
+
+	// -- helpers --
+
+	/**
+	 * Computes the first (lo) and last (hi) column offset covered in each row of
+	 * the stamp. Row r has offset first + r from the center.
+	 */
+	private void computeRows(final int first, final int[] lo, final int[] hi) {
+		if (shape == Shape.SQUARE) {
+			for (int r = 0; r < width; r++) {
+				lo[r] = first;
+				hi[r] = first + width - 1;
+			}
+			return;
+		}
+		// NB - the center of the brush lies between pixels for even widths
+		final double center = (width - 1) / 2.0;
+		final double radius2 = width * width / 4.0;
+		for (int r = 0; r < width; r++) {
+			final double dy = r - center;
+			final double half = Math.sqrt(Math.max(radius2 - dy * dy, 0));
+			lo[r] = (int) Math.ceil(center - half) + first;
+			hi[r] = (int) Math.floor(center + half) + first;
+			if (lo[r] < first) lo[r] = first;
+			if (hi[r] > first + width - 1) hi[r] = first + width - 1;
+		}
+	}
+
+	/**
+	 * Returns the runs of the stamp centered at the origin that the stamp
+	 * centered at (-sx,-sy) does not cover.
+	 */
+	private int[] difference(final int first, final int[] lo, final int[] hi,
+		final int sx, final int sy)
+	{
+		final int[] diff = new int[6 * width];
+		int count = 0;
+		for (int r = 0; r < width; r++) {
+			if (lo[r] > hi[r]) continue;
+			final int dv = first + r;
+			// the row of the previous stamp overlapping this one
+			final int pr = r + sy;
+			if (pr < 0 || pr >= width || lo[pr] > hi[pr]) {
+				count = add(diff, count, dv, lo[r], hi[r]);
+				continue;
+			}
+			final int plo = lo[pr] - sx;
+			final int phi = hi[pr] - sx;
+			if (lo[r] < plo) {
+				count = add(diff, count, dv, lo[r], Math.min(hi[r], plo - 1));
+			}
+			if (hi[r] > phi) {
+				count = add(diff, count, dv, Math.max(lo[r], phi + 1), hi[r]);
+			}
+		}
+		return trim(diff, count);
+	}
+
+	private static int add(final int[] runList, final int count, final int dv,
+		final int du0, final int du1)
+	{
+		runList[count] = dv;
+		runList[count + 1] = du0;
+		runList[count + 2] = du1;
+		return count + 3;
+	}
+
+	private static int[] trim(final int[] values, final int count) {
+		final int[] trimmed = new int[count];
+		System.arraycopy(values, 0, trimmed, 0, count);
+		return trimmed;
+	}
+
+	private static int direction(final int sx, final int sy) {
+		return 3 * (sy + 1) + sx + 1;
+	}
+
+	/** Sets the given runs relative to (u,v), clipped to the plane. */
+	private static void apply(final int[] runList, final PlaneAccessor access,
+		final long u, final long v, final double[] values)
+	{
+		final long maxU = access.getWidth() - 1;
+		final long maxV = access.getHeight() - 1;
+		for (int i = 0; i < runList.length; i += 3) {
+			final long row = v + runList[i];
+			if (row < 0 || row > maxV) continue;
+			final long first = Math.max(u + runList[i + 1], 0);
+			final long last = Math.min(u + runList[i + 2], maxU);
+			if (first <= last) access.setRun(first, last, row, values);
+		}
+	}
+
+}
@@ -0,0 +1,212 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2016 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.plugins.tools;
+
+import java.util.Arrays;
+
+import net.imagej.Dataset;
+import net.imagej.ImgPlus;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.cell.AbstractCellImg;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Collects the runs of pixels written to one UV plane of a cell backed
+ * {@link Dataset}, and writes them cell by cell when flushed. Strokes and
+ * sprays write in the order the mouse moves, which may cross cell borders at
+ * every dot; grouping the writes makes each cell be loaded once per flush
+ * rather than once per visit, which keeps lazily loaded or disk cached images
+ * from thrashing their cell cache.
+ * <p>
+ * The buffer counts a <em>hit</em> for every run written to the cell the
+ * previous run was written to, and a <em>miss</em> for every run that moved
+ * to another cell.
+ * </p>
+ */
+public class CellWriteBuffer {
+
+	/** Bits of a sort key holding the sequence number of a run. */
+	private static final int SEQUENCE_BITS = 16;
+
+	/** The number of runs held before the buffer flushes itself. */
+	private static final int CAPACITY = 1 << SEQUENCE_BITS;
+
+	// -- instance variables --
+
+	private final RandomAccess<? extends RealType<?>> accessor;
+	private final int uAxis, vAxis, chanAxis;
+	private final int cellWidth, cellHeight, cellDepth;
+	private final long gridWidth, gridHeight;
+
+	private long[] starts = new long[64], ends = new long[64],
+			lines = new long[64], keys = new long[64];
+	private int[] channels = new int[64];
+	private double[] values = new double[64];
+	private int size;
+
+	private long lastCell = -1;
+	private long hits, misses;
+
+	// -- constructor --
+
+	private CellWriteBuffer(final CellGrid grid,
+		final RandomAccess<? extends RealType<?>> accessor, final int uAxis,
+		final int vAxis, final int chanAxis)
+	{
+		this.accessor = accessor;
+		this.uAxis = uAxis;
+		this.vAxis = vAxis;
+		this.chanAxis = chanAxis;
+		cellWidth = grid.cellDimension(uAxis);
+		cellHeight = grid.cellDimension(vAxis);
+		cellDepth = chanAxis < 0 ? 1 : grid.cellDimension(chanAxis);
+		gridWidth = grid.gridDimension(uAxis);
+		gridHeight = grid.gridDimension(vAxis);
+	}
+
+	// -- CellWriteBuffer methods --
+
+	/**
+	 * Returns a buffer writing to the given dataset through the given accessor,
+	 * or null if the dataset is not backed by cells. The accessor must be
+	 * positioned on the plane written to.
+	 */
+	public static CellWriteBuffer create(final Dataset dataset,
+		final RandomAccess<? extends RealType<?>> accessor, final int uAxis,
+		final int vAxis, final int chanAxis)
+	{
+		Img<?> img = dataset.getImgPlus();
+		while (img instanceof ImgPlus)
+			img = ((ImgPlus<?>) img).getImg();
+		if (!(img instanceof AbstractCellImg)) return null;
+		final CellGrid grid = ((AbstractCellImg<?, ?, ?, ?>) img).getCellGrid();
+		return new CellWriteBuffer(grid, accessor, uAxis, vAxis, chanAxis);
+	}
+
+	/**
+	 * Queues setting channel c of the pixels from u0 to u1 on line v to value.
+	 * The run is split where it crosses cell borders.
+	 */
+	public void add(final long u0, final long u1, final long v, final int c,
+		final double value)
+	{
+		final long cellRow = (c / cellDepth * gridHeight + v / cellHeight) *
+			gridWidth;
+		long start = u0;
+		while (start <= u1) {
+			final long cu = start / cellWidth;
+			final long end = Math.min(u1, (cu + 1) * cellWidth - 1);
+			if (size == CAPACITY) flush();
+			if (size == starts.length) grow();
+			starts[size] = start;
+			ends[size] = end;
+			lines[size] = v;
+			channels[size] = c;
+			values[size] = value;
+			keys[size] = (cellRow + cu) << SEQUENCE_BITS | size;
+			size++;
+			start = end + 1;
+		}
+	}
+
+	/**
+	 * Writes the queued runs, grouped by cell. Runs within a cell are written
+	 * in the order they were queued, so later writes win.
+	 */
+	public void flush() {
+		if (size == 0) return;
+		Arrays.sort(keys, 0, size);
+		final long mask = CAPACITY - 1;
+		for (int k = 0; k < size; k++) {
+			final long cell = keys[k] >>> SEQUENCE_BITS;
+			final int i = (int) (keys[k] & mask);
+			if (cell == lastCell) hits++;
+			else {
+				misses++;
+				lastCell = cell;
+			}
+			accessor.setPosition(lines[i], vAxis);
+			if (chanAxis >= 0) accessor.setPosition(channels[i], chanAxis);
+			accessor.setPosition(starts[i], uAxis);
+			final double value = values[i];
+			for (long u = starts[i]; u <= ends[i]; u++) {
+				accessor.get().setReal(value);
+				accessor.fwd(uAxis);
+			}
+		}
+		size = 0;
+	}
+
+	/** Drops the queued runs without writing them. */
+	public void clear() {
+		size = 0;
+	}
+
+	/** Returns the number of runs waiting to be written. */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Notes that the accessor was moved to another plane, whose cells are not
+	 * the ones last written to. Flush the buffer before moving it.
+	 */
+	public void planeChanged() {
+		lastCell = -1;
+	}
+
+	/** Returns the number of runs written to the cell of the previous run. */
+	public long getCellHits() {
+		return hits;
+	}
+
+	/** Returns the number of runs written to a cell other than the previous. */
+	public long getCellMisses() {
+		return misses;
+	}
+
+	// -- helpers --
+
+	/** Doubles the room for queued runs. */
+	private void grow() {
+		final int length = 2 * starts.length;
+		starts = Arrays.copyOf(starts, length);
+		ends = Arrays.copyOf(ends, length);
+		lines = Arrays.copyOf(lines, length);
+		keys = Arrays.copyOf(keys, length);
+		channels = Arrays.copyOf(channels, length);
+		values = Arrays.copyOf(values, length);
+	}
+
+}
@@ -0,0 +1,226 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2016 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.plugins.tools;
+
+import org.scijava.util.LongArray;
+
+/**
+ * Traces the outer outline of the region of matching pixels connected to a
+ * seed pixel. The tracer follows the cracks between pixels, keeping the region
+ * on its right, and only ever looks at the pixels next to the outline; the
+ * cost of a trace is thus proportional to the perimeter of the region rather
+ * than to its area. Pixels match if all their channel values are within the
+ * tolerance of those of the seed pixel.
+ * <p>
+ * The outline is a polygon whose vertices lie on pixel corners: vertex (u,v)
+ * is the upper left corner of pixel (u,v). Only the corners where the outline
+ * turns are vertices.
+ * </p>
+ */
+public class ContourTracer {
+
+	// -- constants --
+
+	/** Step of each direction: right, down, left and up. */
+	private static final int[] DU = { 1, 0, -1, 0 };
+	private static final int[] DV = { 0, 1, 0, -1 };
+
+	private static final int DOWN = 1;
+
+	// -- instance variables --
+
+	private final PlaneAccessor access;
+	private final LongArray vertices = new LongArray();
+
+	private FillTolerance tolerance = FillTolerance.EXACT;
+	private boolean eightConnected = true;
+	private long maxU, maxV;
+	private double[] minValues, maxValues;
+
+	// -- constructor --
+
+	public ContourTracer(final PlaneAccessor access) {
+		this.access = access;
+	}
+
+	// -- public interface --
+
+	/** Sets how far pixels may differ from the seed pixel and still match. */
+	public void setTolerance(final FillTolerance tolerance) {
+		this.tolerance = tolerance;
+	}
+
+	/** Gets how far pixels may differ from the seed pixel and still match. */
+	public FillTolerance getTolerance() {
+		return tolerance;
+	}
+
+	/**
+	 * Specify whether diagonally adjacent pixels belong to the same region
+	 * (8-connected) or not (4-connected).
+	 */
+	public void setEightConnected(final boolean b) {
+		eightConnected = b;
+	}
+
+	/** Returns true if diagonally adjacent pixels belong to the same region. */
+	public boolean isEightConnected() {
+		return eightConnected;
+	}
+
+	/**
+	 * Traces the outline of the region containing the seed pixel (u0,v0).
+	 * 
+	 * @return false if the seed lies outside of the plane, true otherwise
+	 */
+	public boolean trace(final long u0, final long v0) {
+		vertices.clear();
+		maxU = access.getWidth() - 1;
+		maxV = access.getHeight() - 1;
+		if (u0 < 0 || u0 > maxU || v0 < 0 || v0 > maxV) return false;
+		final double[] seedValues = new double[access.getChannelCount()];
+		access.get(u0, v0, seedValues);
+		minValues = new double[seedValues.length];
+		maxValues = new double[seedValues.length];
+		tolerance.bounds(seedValues, minValues, maxValues);
+		long u = u0;
+		while (true) {
+			// move right to the edge of the region
+			while (inside(u + 1, v0))
+				u++;
+			// the crack right of pixel u, followed downwards, has it on its right
+			if (follow(u + 1, v0) > 0) return true;
+			// that was the outline of a hole: continue right of it. NB - this also
+			// skips any islands within the hole, which are other regions.
+			u = rightmostCrossing(v0);
+		}
+	}
+
+	/** Gets the number of vertices of the traced outline. */
+	public int getVertexCount() {
+		return vertices.size() / 2;
+	}
+
+	/** Gets the u coordinate of the given vertex of the traced outline. */
+	public long getVertexU(final int index) {
+		return vertices.getValue(2 * index);
+	}
+
+	/** Gets the v coordinate of the given vertex of the traced outline. */
+	public long getVertexV(final int index) {
+		return vertices.getValue(2 * index + 1);
+	}
+
+	// -- helpers --
+
+	/**
+	 * Follows the outline through the crack going down from corner (u,v) until
+	 * it is back there, recording the corners where it turns.
+	 * 
+	 * @return twice the signed area of the outline; positive if the region is
+	 *         inside of the outline and negative if the outline is a hole
+	 */
+	private long follow(final long startU, final long startV) {
+		vertices.clear();
+		long u = startU, v = startV;
+		int dir = DOWN;
+		long area = 0;
+		long lastU = 0, lastV = 0, firstU = 0, firstV = 0;
+		do {
+			u += DU[dir];
+			v += DV[dir];
+			// pixels ahead of the corner, left and right of the way
+			final boolean left = inside(u + aheadLeftU(dir), v + aheadLeftV(dir));
+			final boolean right =
+				inside(u + aheadLeftU(dir + 1), v + aheadLeftV(dir + 1));
+			final int newDir;
+			if (left && (right || eightConnected)) newDir = (dir + 3) & 3;
+			else if (right) newDir = dir;
+			else newDir = (dir + 1) & 3;
+			if (newDir != dir) {
+				if (vertices.size() == 0) {
+					firstU = u;
+					firstV = v;
+				}
+				else area += lastU * v - u * lastV;
+				vertices.addValue(u);
+				vertices.addValue(v);
+				lastU = u;
+				lastV = v;
+			}
+			dir = newDir;
+		}
+		while (u != startU || v != startV || dir != DOWN);
+		return area + lastU * firstV - firstU * lastV;
+	}
+
+	/**
+	 * Returns the rightmost vertical crack of the traced outline that line v
+	 * crosses. For the outline of a hole the pixel right of it is part of the
+	 * region.
+	 */
+	private long rightmostCrossing(final long v) {
+		final int count = getVertexCount();
+		long rightmost = Long.MIN_VALUE;
+		for (int i = 0; i < count; i++) {
+			final int next = (i + 1) % count;
+			final long u = getVertexU(i);
+			if (u != getVertexU(next)) continue;
+			final long va = getVertexV(i), vb = getVertexV(next);
+			if (Math.min(va, vb) <= v && v < Math.max(va, vb) && u > rightmost) {
+				rightmost = u;
+			}
+		}
+		return rightmost;
+	}
+
+	/**
+	 * Offset from a corner to the pixel ahead of it and left of the way, when
+	 * going in the given direction. The pixel ahead and right of the way is the
+	 * one ahead and left when going in the direction turned right.
+	 */
+	private static int aheadLeftU(final int dir) {
+		// right: (0,-1), down: (0,0), left: (-1,0), up: (-1,-1)
+		return (dir & 3) < 2 ? 0 : -1;
+	}
+
+	private static int aheadLeftV(final int dir) {
+		final int d = dir & 3;
+		return d == 0 || d == 3 ? -1 : 0;
+	}
+
+	private boolean inside(final long u, final long v) {
+		if (u < 0 || u > maxU || v < 0 || v > maxV) return false;
+		return access.inRange(u, v, minValues, maxValues);
+	}
+
+}
@@ -0,0 +1,150 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2016 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.plugins.tools;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import net.imagej.Dataset;
+import net.imagej.event.DatasetDeletedEvent;
+import net.imagej.event.DatasetUpdatedEvent;
+
+import org.scijava.event.EventHandler;
+import org.scijava.plugin.Plugin;
+import org.scijava.service.AbstractService;
+import org.scijava.service.Service;
+
+/**
+ * Default service for keeping the undo history of tool edits. Only a limited
+ * number of edits is kept per dataset; older journals are disposed of.
+ * <p>
+ * Tools publish their journaled edits as {@link DatasetRegionUpdatedEvent}s.
+ * Any other update of a dataset's pixels, including a change of its
+ * structure or type, discards its history, since restoring an older edit
+ * would then write stale pixels.
+ * </p>
+ */
+@Plugin(type = Service.class)
+public class DefaultUndoService extends AbstractService implements
+	UndoService
+{
+
+	/** The most edits kept per dataset. */
+	private static final int MAX_EDITS = 16;
+
+	private final Map<Dataset, Deque<UndoJournal>> journals =
+		new WeakHashMap<Dataset, Deque<UndoJournal>>();
+
+	// -- UndoService methods --
+
+	@Override
+	public void push(final Dataset dataset, final UndoJournal journal) {
+		journal.finish();
+		if (journal.isEmpty()) return;
+		final UndoJournal dropped;
+		synchronized (journals) {
+			Deque<UndoJournal> edits = journals.get(dataset);
+			if (edits == null) {
+				edits = new ArrayDeque<UndoJournal>();
+				journals.put(dataset, edits);
+			}
+			edits.addLast(journal);
+			dropped = edits.size() > MAX_EDITS ? edits.removeFirst() : null;
+		}
+		if (dropped != null) dropped.dispose();
+	}
+
+	@Override
+	public UndoJournal pop(final Dataset dataset) {
+		synchronized (journals) {
+			final Deque<UndoJournal> edits = journals.get(dataset);
+			if (edits == null) return null;
+			final UndoJournal journal = edits.pollLast();
+			if (edits.isEmpty()) journals.remove(dataset);
+			return journal;
+		}
+	}
+
+	@Override
+	public boolean canUndo(final Dataset dataset) {
+		synchronized (journals) {
+			return journals.containsKey(dataset);
+		}
+	}
+
+	@Override
+	public void clear(final Dataset dataset) {
+		final Deque<UndoJournal> edits;
+		synchronized (journals) {
+			edits = journals.remove(dataset);
+		}
+		if (edits == null) return;
+		for (final UndoJournal journal : edits)
+			journal.dispose();
+	}
+
+	// -- Disposable methods --
+
+	@Override
+	public void dispose() {
+		final List<Deque<UndoJournal>> all;
+		synchronized (journals) {
+			all = new ArrayList<Deque<UndoJournal>>(journals.values());
+			journals.clear();
+		}
+		for (final Deque<UndoJournal> edits : all) {
+			for (final UndoJournal journal : edits)
+				journal.dispose();
+		}
+	}
+
+	// -- Event handlers --
+
+	@EventHandler
+	protected void onEvent(final DatasetUpdatedEvent evt) {
+		// NB - restructured and retyped datasets are reported as updates too
+		if (evt instanceof DatasetRegionUpdatedEvent || evt.isMetaDataOnly()) {
+			return;
+		}
+		clear(evt.getObject());
+	}
+
+	@EventHandler
+	protected void onEvent(final DatasetDeletedEvent evt) {
+		clear(evt.getObject());
+	}
+
+}
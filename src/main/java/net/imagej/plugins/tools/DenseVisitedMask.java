@@ -0,0 +1,84 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2016 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.plugins.tools;
+
+import java.util.Arrays;
+
+/**
+ * {@link VisitedMask} that keeps one bit per pixel of the plane in a single
+ * long[] in row major order.
+ */
+public class DenseVisitedMask extends VisitedMask {
+
+	// -- instance variables --
+
+	private final long width;
+	private final long[] words;
+
+	// -- constructor --
+
+	public DenseVisitedMask(final long width, final long height) {
+		final long wordCount = (width * height + 63) >>> 6;
+		if (wordCount > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("Plane is too large for a dense " +
+				"mask: " + width + " x " + height);
+		}
+		this.width = width;
+		words = new long[(int) wordCount];
+	}
+
+	// -- VisitedMask methods --
+
+	@Override
+	public boolean isSet(final long u, final long v) {
+		final long i = v * width + u;
+		return (words[(int) (i >>> 6)] & (1L << i)) != 0;
+	}
+
+	@Override
+	public void set(final long u, final long v) {
+		final long i = v * width + u;
+		words[(int) (i >>> 6)] |= 1L << i;
+	}
+
+	@Override
+	public void setRun(final long u0, final long u1, final long v) {
+		final long row = v * width;
+		setBits(words, row + u0, row + u1);
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(words, 0);
+	}
+
+}
@@ -0,0 +1,930 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2016 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.plugins.tools;
+
+import net.imagej.Dataset;
+import net.imagej.ImgPlus;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.ByteType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.type.numeric.integer.ShortType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedIntType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.numeric.real.FloatType;
+
+/**
+ * Direct access to the primitive arrays holding one UV plane of a
+ * {@link Dataset} backed by an {@link ArrayImg}, or by a {@link PlanarImg}
+ * whose planes are the UV planes. The array and offset of the plane of each
+ * channel are resolved once per plane, so a pixel is read or written at a
+ * computed index rather than by positioning a RandomAccess in every
+ * dimension.
+ * <p>
+ * There is one implementation per pixel type, picked by {@link #create}, whose
+ * loops read and write its primitive arrays directly; the hot loops of fills,
+ * stamps and sprays thus see a single type. Values are stored exactly as the
+ * pixel type itself stores them.
+ * </p>
+ */
+abstract class DirectPlane {
+
+	private final Img<?> img;
+	private final int uAxis, vAxis, chanAxis;
+	private final long[] dims;
+	protected final long strideU, strideV;
+
+	/** The offset of the plane of each channel in its array. */
+	protected final long[] offsets;
+
+	/** Converts values the way the pixel type does. */
+	private final RealType<?> scratch;
+
+	/** The last value converted for each channel, and what it converted to. */
+	private final long[] convertedBits, codes;
+	private final boolean[] converted;
+
+	// -- constructor --
+
+	protected DirectPlane(final Img<?> img, final int uAxis, final int vAxis,
+		final int chanAxis, final int channelCount, final RealType<?> scratch)
+	{
+		this.img = img;
+		this.uAxis = uAxis;
+		this.vAxis = vAxis;
+		this.chanAxis = chanAxis;
+		this.scratch = scratch;
+		dims = new long[img.numDimensions()];
+		img.dimensions(dims);
+		if (img instanceof ArrayImg) {
+			strideU = stride(uAxis);
+			strideV = stride(vAxis);
+		}
+		else {
+			strideU = 1;
+			strideV = dims[0];
+		}
+		offsets = new long[channelCount];
+		convertedBits = new long[channelCount];
+		codes = new long[channelCount];
+		converted = new boolean[channelCount];
+	}
+
+	// -- DirectPlane methods --
+
+	/**
+	 * Returns direct access to the plane of the given dataset at the given
+	 * position, or null if the dataset's image or pixel type is not supported.
+	 */
+	public static DirectPlane create(final Dataset dataset, final int uAxis,
+		final int vAxis, final int chanAxis, final int channelCount,
+		final long[] position)
+	{
+		Img<?> img = dataset.getImgPlus();
+		while (img instanceof ImgPlus)
+			img = ((ImgPlus<?>) img).getImg();
+		final boolean planar =
+			img instanceof PlanarImg && uAxis == 0 && vAxis == 1;
+		if (!(img instanceof ArrayImg) && !planar) return null;
+		final Object type = img.firstElement();
+		if (!(type instanceof RealType)) return null;
+		final RealType<?> scratch = ((RealType<?>) type).createVariable();
+		final Class<?> c = type.getClass();
+		final DirectPlane plane;
+		if (c == ByteType.class) {
+			plane =
+				new Bytes(img, uAxis, vAxis, chanAxis, channelCount, scratch);
+		}
+		else if (c == UnsignedByteType.class) {
+			plane =
+				new UnsignedBytes(img, uAxis, vAxis, chanAxis, channelCount, scratch);
+		}
+		else if (c == ShortType.class) {
+			plane =
+				new Shorts(img, uAxis, vAxis, chanAxis, channelCount, scratch);
+		}
+		else if (c == UnsignedShortType.class) {
+			plane =
+				new UnsignedShorts(img, uAxis, vAxis, chanAxis, channelCount, scratch);
+		}
+		else if (c == IntType.class) {
+			plane =
+				new Ints(img, uAxis, vAxis, chanAxis, channelCount, scratch);
+		}
+		else if (c == UnsignedIntType.class) {
+			plane =
+				new UnsignedInts(img, uAxis, vAxis, chanAxis, channelCount, scratch);
+		}
+		else if (c == LongType.class) {
+			plane =
+				new Longs(img, uAxis, vAxis, chanAxis, channelCount, scratch);
+		}
+		else if (c == FloatType.class) {
+			plane =
+				new Floats(img, uAxis, vAxis, chanAxis, channelCount, scratch);
+		}
+		else if (c == DoubleType.class) {
+			plane =
+				new Doubles(img, uAxis, vAxis, chanAxis, channelCount, scratch);
+		}
+		else return null;
+		if (!plane.setPlanePosition(position)) return null;
+		return plane;
+	}
+
+	/**
+	 * Resolves the arrays of the plane at the given position. Returns false if
+	 * the storage is not what the pixel type implies.
+	 */
+	public boolean setPlanePosition(final long[] position) {
+		final long[] pos = position.clone();
+		for (int c = 0; c < offsets.length; c++) {
+			if (chanAxis >= 0) pos[chanAxis] = c;
+			final Object access;
+			if (img instanceof ArrayImg) {
+				access = ((ArrayImg<?, ?>) img).update(null);
+				long offset = 0;
+				for (int d = 0; d < dims.length; d++) {
+					if (d != uAxis && d != vAxis) offset += pos[d] * stride(d);
+				}
+				offsets[c] = offset;
+			}
+			else {
+				long plane = 0, planes = 1;
+				for (int d = 2; d < dims.length; d++) {
+					plane += pos[d] * planes;
+					planes *= dims[d];
+				}
+				access = ((PlanarImg<?, ?>) img).getPlane((int) plane);
+				offsets[c] = 0;
+			}
+			if (!(access instanceof ArrayDataAccess)) return false;
+			final Object array =
+				((ArrayDataAccess<?>) access).getCurrentStorageArray();
+			if (!resolve(c, array)) return false;
+		}
+		return true;
+	}
+
+	/** Returns the value of channel c of pixel (u,v). */
+	public abstract double get(long u, long v, int c);
+
+	/**
+	 * Reads channel c of the pixels from u0 to u1 on line v into values,
+	 * starting at the given offset.
+	 */
+	public abstract void getRun(long u0, long u1, long v, int c,
+		double[] values, int offset);
+
+	/** Sets channel c of the pixels from u0 to u1 on line v to value. */
+	public abstract void setRun(long u0, long u1, long v, int c, double value);
+
+	/**
+	 * Sets channel c of the pixels from u0 to u1 on line v to the values
+	 * starting at the given offset. The values must be ones the pixel type
+	 * holds exactly, such as values read by {@link #getRun}.
+	 */
+	public abstract void setRun(long u0, long u1, long v, int c,
+		double[] values, int offset);
+
+	/**
+	 * Returns true if every channel of pixel (u,v) lies within the inclusive
+	 * bounds given for that channel. NaN values never match.
+	 */
+	public abstract boolean inRange(long u, long v, double[] min, double[] max);
+
+	// -- internal methods --
+
+	/**
+	 * Takes the given storage array for the plane of channel c. Returns false
+	 * if it is not of the expected primitive type.
+	 */
+	protected abstract boolean resolve(int c, Object array);
+
+	/** Returns the array index of channel c of pixel (u,v). */
+	protected final int index(final long u, final long v, final int c) {
+		return (int) (offsets[c] + u * strideU + v * strideV);
+	}
+
+	/**
+	 * Returns the integer the pixel type stores for the given value of channel
+	 * c. The last conversion of each channel is remembered, as a stroke or fill
+	 * writes the same values over and over.
+	 */
+	protected final long integerCode(final int c, final double value) {
+		final long bits = Double.doubleToRawLongBits(value);
+		if (!converted[c] || convertedBits[c] != bits) {
+			scratch.setReal(value);
+			codes[c] = ((IntegerType<?>) scratch).getIntegerLong();
+			convertedBits[c] = bits;
+			converted[c] = true;
+		}
+		return codes[c];
+	}
+
+	// -- helpers --
+
+	/** Returns the distance between neighbors along axis d of an ArrayImg. */
+	private long stride(final int d) {
+		long stride = 1;
+		for (int k = 0; k < d; k++)
+			stride *= dims[k];
+		return stride;
+	}
+
+	// -- implementations --
+
+	/** Kernels for pixels stored as signed bytes. */
+	private static final class Bytes extends DirectPlane {
+
+		private final byte[][] arrays;
+
+		private Bytes(final Img<?> img, final int uAxis, final int vAxis,
+			final int chanAxis, final int channelCount, final RealType<?> scratch)
+		{
+			super(img, uAxis, vAxis, chanAxis, channelCount, scratch);
+			arrays = new byte[channelCount][];
+		}
+
+		@Override
+		protected boolean resolve(final int c, final Object array) {
+			if (!(array instanceof byte[])) return false;
+			arrays[c] = (byte[]) array;
+			return true;
+		}
+
+		@Override
+		public double get(final long u, final long v, final int c) {
+			return arrays[c][index(u, v, c)];
+		}
+
+		@Override
+		public void getRun(final long u0, final long u1, final long v,
+			final int c, final double[] values, final int offset)
+		{
+			final byte[] a = arrays[c];
+			final int step = (int) strideU;
+			int i = index(u0, v, c);
+			final int end = offset + (int) (u1 - u0);
+			for (int j = offset; j <= end; j++, i += step)
+				values[j] = a[i];
+		}
+
+		@Override
+		public void setRun(final long u0, final long u1, final long v,
+			final int c, final double value)
+		{
+			final byte[] a = arrays[c];
+			final byte code = (byte) integerCode(c, value);
+			final int step = (int) strideU;
+			final int to = index(u1, v, c);
+			for (int i = index(u0, v, c); i <= to; i += step)
+				a[i] = code;
+		}
+
+		@Override
+		public void setRun(final long u0, final long u1, final long v,
+			final int c, final double[] values, final int offset)
+		{
+			final byte[] a = arrays[c];
+			final int step = (int) strideU;
+			int i = index(u0, v, c);
+			final int end = offset + (int) (u1 - u0);
+			for (int j = offset; j <= end; j++, i += step)
+				a[i] = (byte) (long) values[j];
+		}
+
+		@Override
+		public boolean inRange(final long u, final long v, final double[] min,
+			final double[] max)
+		{
+			final long base = u * strideU + v * strideV;
+			for (int c = 0; c < arrays.length; c++) {
+				final double value = arrays[c][(int) (offsets[c] + base)];
+				if (!(value >= min[c] & value <= max[c])) return false;
+			}
+			return true;
+		}
+	}
+
+	/** Kernels for pixels stored as unsigned bytes. */
+	private static final class UnsignedBytes extends DirectPlane {
+
+		private final byte[][] arrays;
+
+		private UnsignedBytes(final Img<?> img, final int uAxis, final int vAxis,
+			final int chanAxis, final int channelCount, final RealType<?> scratch)
+		{
+			super(img, uAxis, vAxis, chanAxis, channelCount, scratch);
+			arrays = new byte[channelCount][];
+		}
+
+		@Override
+		protected boolean resolve(final int c, final Object array) {
+			if (!(array instanceof byte[])) return false;
+			arrays[c] = (byte[]) array;
+			return true;
+		}
+
+		@Override
+		public double get(final long u, final long v, final int c) {
+			return arrays[c][index(u, v, c)] & 0xff;
+		}
+
+		@Override
+		public void getRun(final long u0, final long u1, final long v,
+			final int c, final double[] values, final int offset)
+		{
+			final byte[] a = arrays[c];
+			final int step = (int) strideU;
+			int i = index(u0, v, c);
+			final int end = offset + (int) (u1 - u0);
+			for (int j = offset; j <= end; j++, i += step)
+				values[j] = a[i] & 0xff;
+		}
+
+		@Override
+		public void setRun(final long u0, final long u1, final long v,
+			final int c, final double value)
+		{
+			final byte[] a = arrays[c];
+			final byte code = (byte) integerCode(c, value);
+			final int step = (int) strideU;
+			final int to = index(u1, v, c);
+			for (int i = index(u0, v, c); i <= to; i += step)
+				a[i] = code;
+		}
+
+		@Override
+		public void setRun(final long u0, final long u1, final long v,
+			final int c, final double[] values, final int offset)
+		{
+			final byte[] a = arrays[c];
+			final int step = (int) strideU;
+			int i = index(u0, v, c);
+			final int end = offset + (int) (u1 - u0);
+			for (int j = offset; j <= end; j++, i += step)
+				a[i] = (byte) (long) values[j];
+		}
+
+		@Override
+		public boolean inRange(final long u, final long v, final double[] min,
+			final double[] max)
+		{
+			final long base = u * strideU + v * strideV;
+			for (int c = 0; c < arrays.length; c++) {
+				final double value = arrays[c][(int) (offsets[c] + base)] & 0xff;
+				if (!(value >= min[c] & value <= max[c])) return false;
+			}
+			return true;
+		}
+	}
+
+	/** Kernels for pixels stored as signed shorts. */
+	private static final class Shorts extends DirectPlane {
+
+		private final short[][] arrays;
+
+		private Shorts(final Img<?> img, final int uAxis, final int vAxis,
+			final int chanAxis, final int channelCount, final RealType<?> scratch)
+		{
+			super(img, uAxis, vAxis, chanAxis, channelCount, scratch);
+			arrays = new short[channelCount][];
+		}
+
+		@Override
+		protected boolean resolve(final int c, final Object array) {
+			if (!(array instanceof short[])) return false;
+			arrays[c] = (short[]) array;
+			return true;
+		}
+
+		@Override
+		public double get(final long u, final long v, final int c) {
+			return arrays[c][index(u, v, c)];
+		}
+
+		@Override
+		public void getRun(final long u0, final long u1, final long v,
+			final int c, final double[] values, final int offset)
+		{
+			final short[] a = arrays[c];
+			final int step = (int) strideU;
+			int i = index(u0, v, c);
+			final int end = offset + (int) (u1 - u0);
+			for (int j = offset; j <= end; j++, i += step)
+				values[j] = a[i];
+		}
+
+		@Override
+		public void setRun(final long u0, final long u1, final long v,
+			final int c, final double value)
+		{
+			final short[] a = arrays[c];
+			final short code = (short) integerCode(c, value);
+			final int step = (int) strideU;
+			final int to = index(u1, v, c);
+			for (int i = index(u0, v, c); i <= to; i += step)
+				a[i] = code;
+		}
+
+		@Override
+		public void setRun(final long u0, final long u1, final long v,
+			final int c, final double[] values, final int offset)
+		{
+			final short[] a = arrays[c];
+			final int step = (int) strideU;
+			int i = index(u0, v, c);
+			final int end = offset + (int) (u1 - u0);
+			for (int j = offset; j <= end; j++, i += step)
+				a[i] = (short) (long) values[j];
+		}
+
+		@Override
+		public boolean inRange(final long u, final long v, final double[] min,
+			final double[] max)
+		{
+			final long base = u * strideU + v * strideV;
+			for (int c = 0; c < arrays.length; c++) {
+				final double value = arrays[c][(int) (offsets[c] + base)];
+				if (!(value >= min[c] & value <= max[c])) return false;
+			}
+			return true;
+		}
+	}
+
+	/** Kernels for pixels stored as unsigned shorts. */
+	private static final class UnsignedShorts extends DirectPlane {
+
+		private final short[][] arrays;
+
+		private UnsignedShorts(final Img<?> img, final int uAxis, final int vAxis,
+			final int chanAxis, final int channelCount, final RealType<?> scratch)
+		{
+			super(img, uAxis, vAxis, chanAxis, channelCount, scratch);
+			arrays = new short[channelCount][];
+		}
+
+		@Override
+		protected boolean resolve(final int c, final Object array) {
+			if (!(array instanceof short[])) return false;
+			arrays[c] = (short[]) array;
+			return true;
+		}
+
+		@Override
+		public double get(final long u, final long v, final int c) {
+			return arrays[c][index(u, v, c)] & 0xffff;
+		}
+
+		@Override
+		public void getRun(final long u0, final long u1, final long v,
+			final int c, final double[] values, final int offset)
+		{
+			final short[] a = arrays[c];
+			final int step = (int) strideU;
+			int i = index(u0, v, c);
+			final int end = offset + (int) (u1 - u0);
+			for (int j = offset; j <= end; j++, i += step)
+				values[j] = a[i] & 0xffff;
+		}
+
+		@Override
+		public void setRun(final long u0, final long u1, final long v,
+			final int c, final double value)
+		{
+			final short[] a = arrays[c];
+			final short code = (short) integerCode(c, value);
+			final int step = (int) strideU;
+			final int to = index(u1, v, c);
+			for (int i = index(u0, v, c); i <= to; i += step)
+				a[i] = code;
+		}
+
+		@Override
+		public void setRun(final long u0, final long u1, final long v,
+			final int c, final double[] values, final int offset)
+		{
+			final short[] a = arrays[c];
+			final int step = (int) strideU;
+			int i = index(u0, v, c);
+			final int end = offset + (int) (u1 - u0);
+			for (int j = offset; j <= end; j++, i += step)
+				a[i] = (short) (long) values[j];
+		}
+
+		@Override
+		public boolean inRange(final long u, final long v, final double[] min,
+			final double[] max)
+		{
+			final long base = u * strideU + v * strideV;
+			for (int c = 0; c < arrays.length; c++) {
+				final double value = arrays[c][(int) (offsets[c] + base)] & 0xffff;
+				if (!(value >= min[c] & value <= max[c])) return false;
+			}
+			return true;
+		}
+	}
+
+	/** Kernels for pixels stored as signed ints. */
+	private static final class Ints extends DirectPlane {
+
+		private final int[][] arrays;
+
+		private Ints(final Img<?> img, final int uAxis, final int vAxis,
+			final int chanAxis, final int channelCount, final RealType<?> scratch)
+		{
+			super(img, uAxis, vAxis, chanAxis, channelCount, scratch);
+			arrays = new int[channelCount][];
+		}
+
+		@Override
+		protected boolean resolve(final int c, final Object array) {
+			if (!(array instanceof int[])) return false;
+			arrays[c] = (int[]) array;
+			return true;
+		}
+
+		@Override
+		public double get(final long u, final long v, final int c) {
+			return arrays[c][index(u, v, c)];
+		}
+
+		@Override
+		public void getRun(final long u0, final long u1, final long v,
+			final int c, final double[] values, final int offset)
+		{
+			final int[] a = arrays[c];
+			final int step = (int) strideU;
+			int i = index(u0, v, c);
+			final int end = offset + (int) (u1 - u0);
+			for (int j = offset; j <= end; j++, i += step)
+				values[j] = a[i];
+		}
+
+		@Override
+		public void setRun(final long u0, final long u1, final long v,
+			final int c, final double value)
+		{
+			final int[] a = arrays[c];
+			final int code = (int) integerCode(c, value);
+			final int step = (int) strideU;
+			final int to = index(u1, v, c);
+			for (int i = index(u0, v, c); i <= to; i += step)
+				a[i] = code;
+		}
+
+		@Override
+		public void setRun(final long u0, final long u1, final long v,
+			final int c, final double[] values, final int offset)
+		{
+			final int[] a = arrays[c];
+			final int step = (int) strideU;
+			int i = index(u0, v, c);
+			final int end = offset + (int) (u1 - u0);
+			for (int j = offset; j <= end; j++, i += step)
+				a[i] = (int) (long) values[j];
+		}
+
+		@Override
+		public boolean inRange(final long u, final long v, final double[] min,
+			final double[] max)
+		{
+			final long base = u * strideU + v * strideV;
+			for (int c = 0; c < arrays.length; c++) {
+				final double value = arrays[c][(int) (offsets[c] + base)];
+				if (!(value >= min[c] & value <= max[c])) return false;
+			}
+			return true;
+		}
+	}
+
+	/** Kernels for pixels stored as unsigned ints. */
+	private static final class UnsignedInts extends DirectPlane {
+
+		private final int[][] arrays;
+
+		private UnsignedInts(final Img<?> img, final int uAxis, final int vAxis,
+			final int chanAxis, final int channelCount, final RealType<?> scratch)
+		{
+			super(img, uAxis, vAxis, chanAxis, channelCount, scratch);
+			arrays = new int[channelCount][];
+		}
+
+		@Override
+		protected boolean resolve(final int c, final Object array) {
+			if (!(array instanceof int[])) return false;
+			arrays[c] = (int[]) array;
+			return true;
+		}
+
+		@Override
+		public double get(final long u, final long v, final int c) {
+			return arrays[c][index(u, v, c)] & 0xffffffffL;
+		}
+
+		@Override
+		public void getRun(final long u0, final long u1, final long v,
+			final int c, final double[] values, final int offset)
+		{
+			final int[] a = arrays[c];
+			final int step = (int) strideU;
+			int i = index(u0, v, c);
+			final int end = offset + (int) (u1 - u0);
+			for (int j = offset; j <= end; j++, i += step)
+				values[j] = a[i] & 0xffffffffL;
+		}
+
+		@Override
+		public void setRun(final long u0, final long u1, final long v,
+			final int c, final double value)
+		{
+			final int[] a = arrays[c];
+			final int code = (int) integerCode(c, value);
+			final int step = (int) strideU;
+			final int to = index(u1, v, c);
+			for (int i = index(u0, v, c); i <= to; i += step)
+				a[i] = code;
+		}
+
+		@Override
+		public void setRun(final long u0, final long u1, final long v,
+			final int c, final double[] values, final int offset)
+		{
+			final int[] a = arrays[c];
+			final int step = (int) strideU;
+			int i = index(u0, v, c);
+			final int end = offset + (int) (u1 - u0);
+			for (int j = offset; j <= end; j++, i += step)
+				a[i] = (int) (long) values[j];
+		}
+
+		@Override
+		public boolean inRange(final long u, final long v, final double[] min,
+			final double[] max)
+		{
+			final long base = u * strideU + v * strideV;
+			for (int c = 0; c < arrays.length; c++) {
+				final double value = arrays[c][(int) (offsets[c] + base)] & 0xffffffffL;
+				if (!(value >= min[c] & value <= max[c])) return false;
+			}
+			return true;
+		}
+	}
+
+	/** Kernels for pixels stored as signed longs. */
+	private static final class Longs extends DirectPlane {
+
+		private final long[][] arrays;
+
+		private Longs(final Img<?> img, final int uAxis, final int vAxis,
+			final int chanAxis, final int channelCount, final RealType<?> scratch)
+		{
+			super(img, uAxis, vAxis, chanAxis, channelCount, scratch);
+			arrays = new long[channelCount][];
+		}
+
+		@Override
+		protected boolean resolve(final int c, final Object array) {
+			if (!(array instanceof long[])) return false;
+			arrays[c] = (long[]) array;
+			return true;
+		}
+
+		@Override
+		public double get(final long u, final long v, final int c) {
+			return arrays[c][index(u, v, c)];
+		}
+
+		@Override
+		public void getRun(final long u0, final long u1, final long v,
+			final int c, final double[] values, final int offset)
+		{
+			final long[] a = arrays[c];
+			final int step = (int) strideU;
+			int i = index(u0, v, c);
+			final int end = offset + (int) (u1 - u0);
+			for (int j = offset; j <= end; j++, i += step)
+				values[j] = a[i];
+		}
+
+		@Override
+		public void setRun(final long u0, final long u1, final long v,
+			final int c, final double value)
+		{
+			final long[] a = arrays[c];
+			final long code = integerCode(c, value);
+			final int step = (int) strideU;
+			final int to = index(u1, v, c);
+			for (int i = index(u0, v, c); i <= to; i += step)
+				a[i] = code;
+		}
+
+		@Override
+		public void setRun(final long u0, final long u1, final long v,
+			final int c, final double[] values, final int offset)
+		{
+			final long[] a = arrays[c];
+			final int step = (int) strideU;
+			int i = index(u0, v, c);
+			final int end = offset + (int) (u1 - u0);
+			for (int j = offset; j <= end; j++, i += step)
+				a[i] = (long) values[j];
+		}
+
+		@Override
+		public boolean inRange(final long u, final long v, final double[] min,
+			final double[] max)
+		{
+			final long base = u * strideU + v * strideV;
+			for (int c = 0; c < arrays.length; c++) {
+				final double value = arrays[c][(int) (offsets[c] + base)];
+				if (!(value >= min[c] & value <= max[c])) return false;
+			}
+			return true;
+		}
+	}
+
+	/** Kernels for pixels stored as floats. */
+	private static final class Floats extends DirectPlane {
+
+		private final float[][] arrays;
+
+		private Floats(final Img<?> img, final int uAxis, final int vAxis,
+			final int chanAxis, final int channelCount, final RealType<?> scratch)
+		{
+			super(img, uAxis, vAxis, chanAxis, channelCount, scratch);
+			arrays = new float[channelCount][];
+		}
+
+		@Override
+		protected boolean resolve(final int c, final Object array) {
+			if (!(array instanceof float[])) return false;
+			arrays[c] = (float[]) array;
+			return true;
+		}
+
+		@Override
+		public double get(final long u, final long v, final int c) {
+			return arrays[c][index(u, v, c)];
+		}
+
+		@Override
+		public void getRun(final long u0, final long u1, final long v,
+			final int c, final double[] values, final int offset)
+		{
+			final float[] a = arrays[c];
+			final int step = (int) strideU;
+			int i = index(u0, v, c);
+			final int end = offset + (int) (u1 - u0);
+			for (int j = offset; j <= end; j++, i += step)
+				values[j] = a[i];
+		}
+
+		@Override
+		public void setRun(final long u0, final long u1, final long v,
+			final int c, final double value)
+		{
+			final float[] a = arrays[c];
+			final float code = (float) value;
+			final int step = (int) strideU;
+			final int to = index(u1, v, c);
+			for (int i = index(u0, v, c); i <= to; i += step)
+				a[i] = code;
+		}
+
+		@Override
+		public void setRun(final long u0, final long u1, final long v,
+			final int c, final double[] values, final int offset)
+		{
+			final float[] a = arrays[c];
+			final int step = (int) strideU;
+			int i = index(u0, v, c);
+			final int end = offset + (int) (u1 - u0);
+			for (int j = offset; j <= end; j++, i += step)
+				a[i] = (float) values[j];
+		}
+
+		@Override
+		public boolean inRange(final long u, final long v, final double[] min,
+			final double[] max)
+		{
+			final long base = u * strideU + v * strideV;
+			for (int c = 0; c < arrays.length; c++) {
+				final double value = arrays[c][(int) (offsets[c] + base)];
+				if (!(value >= min[c] & value <= max[c])) return false;
+			}
+			return true;
+		}
+	}
+
+	/** Kernels for pixels stored as doubles. */
+	private static final class Doubles extends DirectPlane {
+
+		private final double[][] arrays;
+
+		private Doubles(final Img<?> img, final int uAxis, final int vAxis,
+			final int chanAxis, final int channelCount, final RealType<?> scratch)
+		{
+			super(img, uAxis, vAxis, chanAxis, channelCount, scratch);
+			arrays = new double[channelCount][];
+		}
+
+		@Override
+		protected boolean resolve(final int c, final Object array) {
+			if (!(array instanceof double[])) return false;
+			arrays[c] = (double[]) array;
+			return true;
+		}
+
+		@Override
+		public double get(final long u, final long v, final int c) {
+			return arrays[c][index(u, v, c)];
+		}
+
+		@Override
+		public void getRun(final long u0, final long u1, final long v,
+			final int c, final double[] values, final int offset)
+		{
+			final double[] a = arrays[c];
+			final int step = (int) strideU;
+			int i = index(u0, v, c);
+			final int end = offset + (int) (u1 - u0);
+			for (int j = offset; j <= end; j++, i += step)
+				values[j] = a[i];
+		}
+
+		@Override
+		public void setRun(final long u0, final long u1, final long v,
+			final int c, final double value)
+		{
+			final double[] a = arrays[c];
+			final double code = value;
+			final int step = (int) strideU;
+			final int to = index(u1, v, c);
+			for (int i = index(u0, v, c); i <= to; i += step)
+				a[i] = code;
+		}
+
+		@Override
+		public void setRun(final long u0, final long u1, final long v,
+			final int c, final double[] values, final int offset)
+		{
+			final double[] a = arrays[c];
+			final int step = (int) strideU;
+			int i = index(u0, v, c);
+			final int end = offset + (int) (u1 - u0);
+			for (int j = offset; j <= end; j++, i += step)
+				a[i] = values[j];
+		}
+
+		@Override
+		public boolean inRange(final long u, final long v, final double[] min,
+			final double[] max)
+		{
+			final long base = u * strideU + v * strideV;
+			for (int c = 0; c < arrays.length; c++) {
+				final double value = arrays[c][(int) (offsets[c] + base)];
+				if (!(value >= min[c] & value <= max[c])) return false;
+			}
+			return true;
+		}
+	}
+
+}
@@ -0,0 +1,133 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2016 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.plugins.tools;
+
+import net.imagej.Dataset;
+import net.imagej.axis.Axes;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+
+/**
+ * Bounding box, in dataset coordinates, of the pixels written by a drawing or
+ * fill operation. Besides the overall box it keeps the box of what was written
+ * since it was last taken, so that a long running operation can publish its
+ * progress piece by piece. A region may be grown from several threads at once.
+ */
+public class DirtyRegion {
+
+	// -- instance variables --
+
+	private final long[] min, max;
+	private final long[] recentMin, recentMax;
+	private boolean empty = true;
+	private boolean recentEmpty = true;
+
+	// -- constructor --
+
+	public DirtyRegion(final int numDimensions) {
+		min = new long[numDimensions];
+		max = new long[numDimensions];
+		recentMin = new long[numDimensions];
+		recentMax = new long[numDimensions];
+	}
+
+	// -- public interface --
+
+	/** Grows this region to include the box from lo to hi (inclusive). */
+	public synchronized void include(final long[] lo, final long[] hi) {
+		grow(min, max, empty, lo, hi);
+		grow(recentMin, recentMax, recentEmpty, lo, hi);
+		empty = false;
+		recentEmpty = false;
+	}
+
+	/**
+	 * Grows this region to include the box [u0,u1] x [v0,v1] of the plane of ds
+	 * at the given position, clipped to the bounds of ds. The box spans every
+	 * channel of ds if allChannels is set and only the channel of the position
+	 * otherwise. Nothing is included if the box lies outside of ds.
+	 */
+	public void includePlaneBox(final Dataset ds, final long[] position,
+		final int uAxis, final int vAxis, final long u0, final long v0,
+		final long u1, final long v1, final boolean allChannels)
+	{
+		final long[] lo = new long[min.length];
+		final long[] hi = new long[min.length];
+		for (int d = 0; d < lo.length; d++) {
+			lo[d] = hi[d] = position[d];
+		}
+		lo[uAxis] = Math.max(Math.min(u0, u1), 0);
+		hi[uAxis] = Math.min(Math.max(u0, u1), ds.dimension(uAxis) - 1);
+		lo[vAxis] = Math.max(Math.min(v0, v1), 0);
+		hi[vAxis] = Math.min(Math.max(v0, v1), ds.dimension(vAxis) - 1);
+		if (lo[uAxis] > hi[uAxis] || lo[vAxis] > hi[vAxis]) return;
+		final int chanAxis = ds.dimensionIndex(Axes.CHANNEL);
+		if (allChannels && chanAxis >= 0) {
+			lo[chanAxis] = 0;
+			hi[chanAxis] = ds.dimension(chanAxis) - 1;
+		}
+		include(lo, hi);
+	}
+
+	/** Returns true if nothing has been included yet. */
+	public synchronized boolean isEmpty() {
+		return empty;
+	}
+
+	/** Returns the bounds of everything included so far, or null if none. */
+	public synchronized Interval getInterval() {
+		if (empty) return null;
+		return new FinalInterval(min, max);
+	}
+
+	/**
+	 * Returns the bounds of what was included since the last call, or null if
+	 * nothing was, and starts collecting anew.
+	 */
+	public synchronized Interval takeRecent() {
+		if (recentEmpty) return null;
+		recentEmpty = true;
+		return new FinalInterval(recentMin, recentMax);
+	}
+
+	// -- helpers --
+
+	private void grow(final long[] bMin, final long[] bMax, final boolean none,
+		final long[] lo, final long[] hi)
+	{
+		for (int d = 0; d < bMin.length; d++) {
+			if (none || lo[d] < bMin[d]) bMin[d] = lo[d];
+			if (none || hi[d] > bMax[d]) bMax[d] = hi[d];
+		}
+	}
+
+}
@@ -0,0 +1,136 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2016 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.plugins.tools;
+
+/**
+ * Describes how far the channel values of a pixel may stray from those of the
+ * seed pixel for the pixel to still be filled. The tolerance is either an
+ * absolute amount or a percentage of each seed channel value, and is given
+ * per channel: a channel past the last amount uses the last amount, so a
+ * single amount applies to all channels.
+ */
+public class FillTolerance {
+
+	// -- constants --
+
+	/** Only pixels exactly equal to the seed pixel match. */
+	public static final FillTolerance EXACT = new FillTolerance(0, false);
+
+	// -- instance variables --
+
+	private final double[] amounts;
+	private final boolean percent;
+
+	// -- constructors --
+
+	public FillTolerance(final double amount, final boolean percent) {
+		this(new double[] { amount }, percent);
+	}
+
+	/**
+	 * Creates a tolerance with the given amount for each channel.
+	 * 
+	 * @throws IllegalArgumentException if no amount is given
+	 */
+	public FillTolerance(final double[] amounts, final boolean percent) {
+		if (amounts.length == 0) {
+			throw new IllegalArgumentException("No tolerance amounts given");
+		}
+		this.amounts = new double[amounts.length];
+		for (int c = 0; c < amounts.length; c++) {
+			this.amounts[c] = Math.abs(amounts[c]);
+		}
+		this.percent = percent;
+	}
+
+	// -- public interface --
+
+	/**
+	 * Parses a comma separated list of amounts, one per channel.
+	 * 
+	 * @throws NumberFormatException if an amount is missing or not a number
+	 */
+	public static double[] parseAmounts(final String text) {
+		final String[] parts = text.split(",", -1);
+		final double[] amounts = new double[parts.length];
+		for (int c = 0; c < parts.length; c++) {
+			amounts[c] = Double.parseDouble(parts[c].trim());
+			if (Double.isNaN(amounts[c])) {
+				throw new NumberFormatException("Not a number: " + parts[c]);
+			}
+		}
+		return amounts;
+	}
+
+	/** Formats amounts as a comma separated list that parses back to them. */
+	public static String formatAmounts(final double[] amounts) {
+		final StringBuilder builder = new StringBuilder();
+		for (int c = 0; c < amounts.length; c++) {
+			if (c > 0) builder.append(", ");
+			final double amount = amounts[c];
+			if (amount == (long) amount) builder.append((long) amount);
+			else builder.append(amount);
+		}
+		return builder.toString();
+	}
+
+	/** Gets the allowed deviation of the given channel from its seed value. */
+	public double getAmount(final int c) {
+		return amounts[Math.min(c, amounts.length - 1)];
+	}
+
+	/** Gets the allowed deviations from the seed values, one per channel. */
+	public double[] getAmounts() {
+		return amounts.clone();
+	}
+
+	/** Returns true if the amount is a percentage of the seed values. */
+	public boolean isPercent() {
+		return percent;
+	}
+
+	/**
+	 * Computes the inclusive per channel bounds of the values that match the
+	 * given seed values.
+	 */
+	public void bounds(final double[] seed, final double[] min,
+		final double[] max)
+	{
+		for (int c = 0; c < seed.length; c++) {
+			final double amount = getAmount(c);
+			final double delta = percent ? Math.abs(seed[c]) * amount / 100 : amount;
+			min[c] = seed[c] - delta;
+			max[c] = seed[c] + delta;
+		}
+	}
+
+}
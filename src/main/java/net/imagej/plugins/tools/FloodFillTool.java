@@ -31,6 +31,11 @@
 
 package net.imagej.plugins.tools;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 import net.imagej.ChannelCollection;
 import net.imagej.Dataset;
 import net.imagej.DrawingTool;
@@ -39,14 +44,19 @@ import net.imagej.display.ImageDisplay;
 import net.imagej.event.DatasetUpdatedEvent;
 import net.imagej.options.OptionsChannels;
 import net.imagej.render.RenderingService;
+import net.imglib2.Interval;
 
 import org.scijava.command.CommandService;
+import org.scijava.display.event.input.KyPressedEvent;
 import org.scijava.display.event.input.MsButtonEvent;
 import org.scijava.display.event.input.MsClickedEvent;
 import org.scijava.event.EventService;
+import org.scijava.input.KeyCode;
 import org.scijava.options.OptionsService;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
+import org.scijava.prefs.PrefService;
+import org.scijava.thread.ThreadService;
 import org.scijava.tool.AbstractTool;
 import org.scijava.tool.Tool;
 
@@ -62,8 +72,35 @@ public class FloodFillTool extends AbstractTool {
 
 	public static final double PRIORITY = -304;
 
+	/** Milliseconds between updates published while a progressive fill runs. */
+	private static final long UPDATE_INTERVAL = 250;
+
 	enum Connectivity {
-		EIGHT, FOUR
+		EIGHT(8), FOUR(4), SIX(6), EIGHTEEN(18), TWENTY_SIX(26);
+
+		private final int neighbors;
+
+		private Connectivity(final int neighbors) {
+			this.neighbors = neighbors;
+		}
+
+		/** Returns the number of neighbors a fill spreads to from each pixel. */
+		int getNeighbors() {
+			return neighbors;
+		}
+
+		/** Returns true if this connectivity spreads a fill through Z. */
+		boolean isVolumetric() {
+			return this == SIX || this == EIGHTEEN || this == TWENTY_SIX;
+		}
+	}
+
+	enum FillMethod {
+		SCANLINE, PARALLEL, PIXEL
+	}
+
+	enum ToleranceMode {
+		ABSOLUTE, PERCENT
 	}
 
 	// -- instance variables --
@@ -77,44 +114,219 @@ public class FloodFillTool extends AbstractTool {
 	@Parameter
 	private OptionsService optionsService;
 
+	@Parameter
+	private ThreadService threadService;
+
 	@Parameter(required = false)
 	private EventService eventService;
 
+	@Parameter
+	private UndoService undoService;
+
+	@Parameter(required = false)
+	private PrefService prefService;
+
 	private Connectivity connectivity = Connectivity.EIGHT;
+	private FillMethod fillMethod = FillMethod.SCANLINE;
+	private int threadCount = 0;
+	private double[] tolerance = { 0 };
+	private ToleranceMode toleranceMode = ToleranceMode.ABSOLUTE;
+	private boolean fillAcrossTime = false;
+	private boolean progressive = false;
+	private boolean undoable = true;
+
+	/** The fill running in the background, if any. */
+	private volatile AbstractFloodFiller activeFiller;
+
+	private boolean settingsLoaded;
 
 	// -- public interface --
 
-	/** Specify whether this flood fill operation should be 4 or 8 connected. */
+	/**
+	 * Specify whether this flood fill operation should be 4 or 8 connected
+	 * within the current plane, or 6, 18 or 26 connected through Z.
+	 */
 	public void setConnectivity(final Connectivity c) {
 		connectivity = c;
 	}
 
-	/** Gets this flood fill's current connectivity (4 or 8 connected). */
+	/** Gets this flood fill's current connectivity (4, 8, 6, 18 or 26). */
 	public Connectivity getConnectivity() {
 		return connectivity;
 	}
 
+	/**
+	 * Specify whether this flood fill operation should sweep whole scanlines
+	 * (on one or several threads) or visit the region pixel by pixel.
+	 */
+	public void setFillMethod(final FillMethod m) {
+		fillMethod = m;
+	}
+
+	/** Gets this flood fill's current fill method. */
+	public FillMethod getFillMethod() {
+		return fillMethod;
+	}
+
+	/**
+	 * Sets the number of threads used by parallel fills. Zero means one thread
+	 * per available processor.
+	 */
+	public void setThreadCount(final int count) {
+		if (count < 0) threadCount = 0;
+		else threadCount = count;
+	}
+
+	/** Gets the number of threads used by parallel fills. */
+	public int getThreadCount() {
+		return threadCount;
+	}
+
+	/**
+	 * Sets how far the channel values of a pixel may differ from those of the
+	 * clicked pixel for the pixel to still be filled, one amount per channel.
+	 * Channels past the last amount use the last amount, so a single amount
+	 * applies to all channels. Zero fills only pixels exactly equal to the
+	 * clicked pixel.
+	 */
+	public void setTolerance(final double... t) {
+		if (t.length == 0) {
+			tolerance = new double[] { 0 };
+			return;
+		}
+		tolerance = new double[t.length];
+		for (int c = 0; c < t.length; c++) {
+			tolerance[c] = t[c] < 0 ? 0 : t[c];
+		}
+	}
+
+	/** Gets this flood fill's current tolerance, one amount per channel. */
+	public double[] getTolerance() {
+		return tolerance.clone();
+	}
+
+	/**
+	 * Specify whether the tolerance is an absolute amount or a percentage of the
+	 * clicked pixel's channel values.
+	 */
+	public void setToleranceMode(final ToleranceMode mode) {
+		toleranceMode = mode;
+	}
+
+	/** Gets this flood fill's current tolerance mode. */
+	public ToleranceMode getToleranceMode() {
+		return toleranceMode;
+	}
+
+	/**
+	 * Specify whether volumetric (6, 18 or 26 connected) fills also spread
+	 * along the TIME axis.
+	 */
+	public void setFillAcrossTime(final boolean b) {
+		fillAcrossTime = b;
+	}
+
+	/** Returns true if volumetric fills also spread along the TIME axis. */
+	public boolean isFillAcrossTime() {
+		return fillAcrossTime;
+	}
+
+	/**
+	 * Specify whether fills should run in the background, publishing the parts
+	 * of the image they have filled so far as they go. A background fill can be
+	 * cancelled by pressing Escape.
+	 */
+	public void setProgressive(final boolean b) {
+		progressive = b;
+	}
+
+	/** Returns true if fills run in the background. */
+	public boolean isProgressive() {
+		return progressive;
+	}
+
+	/**
+	 * Specify whether fills record the pixels they overwrite so they can be
+	 * undone. Huge fills may not be worth the memory or disk space that takes;
+	 * a fill that is not recorded discards the undo history of its dataset.
+	 */
+	public void setUndoable(final boolean b) {
+		undoable = b;
+	}
+
+	/** Returns true if fills can be undone. */
+	public boolean isUndoable() {
+		return undoable;
+	}
+
 	/** Implements the configuration of this tool. */
 	@Override
 	public void configure() {
+		loadSettings();
 		commandService.run(FloodFillToolConfig.class, true, "tool", this);
 	}
 
+	/** On activation the stored settings are loaded, the first time only. */
+	@Override
+	public void activate() {
+		loadSettings();
+	}
+
+	/**
+	 * Stores this tool's settings with the {@link PrefService} so that later
+	 * sessions start with them.
+	 */
+	public void saveSettings() {
+		final ToolSettings settings = new ToolSettings(prefService, getClass());
+		settings.put("connectivity", connectivity);
+		settings.put("fillMethod", fillMethod);
+		settings.put("threadCount", threadCount);
+		settings.put("tolerance", FillTolerance.formatAmounts(tolerance));
+		settings.put("toleranceMode", toleranceMode);
+		settings.put("fillAcrossTime", fillAcrossTime);
+		settings.put("progressive", progressive);
+		settings.put("undoable", undoable);
+	}
+
 	/** Run flood fill when mouse clicked */
 	@Override
 	public void onMouseClick(final MsClickedEvent evt) {
 		if (evt.getButton() == MsButtonEvent.LEFT_BUTTON) {
 			final ImageDisplay imageDisplay = (ImageDisplay) evt.getDisplay();
-			if (imageDisplay != null) {
+			// NB - ignore clicks while a background fill is still running
+			if (imageDisplay != null && activeFiller == null) {
 				final PixelRecorder recorder = new PixelRecorder(getContext(), false);
 				if (recorder.record(evt)) {
 					final DrawingTool drawingTool =
 						initDrawingTool(recorder.wasAltKeyDown(), recorder.getDataset());
 					final long[] currPos = getCurrPosition(imageDisplay);
-					floodFill(recorder.getCX(), recorder.getCY(), currPos, connectivity, drawingTool);
-					Dataset dataset = drawingTool.getDataset();
-					if (eventService != null) {
-						eventService.publish(new DatasetUpdatedEvent(dataset, false));
+					final AbstractFloodFiller filler =
+						createFiller(connectivity, fillMethod, drawingTool);
+					if (progressive && filler != null) {
+						fillInBackground(filler, recorder.getCX(), recorder.getCY(),
+							currPos, connectivity);
+					}
+					else {
+						final DirtyRegion region = new DirtyRegion(currPos.length);
+						final UndoJournal journal = undoable ? new UndoJournal() : null;
+						if (filler != null) {
+							filler.setDirtyRegion(region);
+							filler.setJournal(journal);
+						}
+						floodFill(recorder.getCX(), recorder.getCY(), currPos,
+							connectivity, filler, drawingTool);
+						Dataset dataset = drawingTool.getDataset();
+						// NB - the pixel by pixel filler does not track what it fills
+						if (filler != null && journal != null) {
+							undoService.push(dataset, journal);
+						}
+						else undoService.clear(dataset);
+						if (filler != null) {
+							publishRegion(dataset, region.getInterval(), false);
+						}
+						else if (eventService != null) {
+							eventService.publish(new DatasetUpdatedEvent(dataset, false));
+						}
 					}
 				}
 				recorder.releaseDataset();
@@ -123,8 +335,46 @@ public class FloodFillTool extends AbstractTool {
 		}
 	}
 
+	/** Cancels the running background fill when Escape is pressed. */
+	@Override
+	public void onKeyDown(final KyPressedEvent evt) {
+		final AbstractFloodFiller filler = activeFiller;
+		if (filler == null || evt.getCode() != KeyCode.ESCAPE) return;
+		filler.cancel();
+		evt.consume();
+	}
+
 	// -- private helpers --
 
+	/** Loads the stored settings of this tool if that has not been done yet. */
+	private void loadSettings() {
+		if (settingsLoaded) return;
+		settingsLoaded = true;
+		final ToolSettings settings = new ToolSettings(prefService, getClass());
+		setConnectivity(settings.getEnum("connectivity", connectivity));
+		setFillMethod(settings.getEnum("fillMethod", fillMethod));
+		setThreadCount(settings.getInt("threadCount", threadCount));
+		try {
+			setTolerance(FillTolerance.parseAmounts(settings.getString("tolerance",
+				FillTolerance.formatAmounts(tolerance))));
+		}
+		catch (final NumberFormatException e) {
+			log().warn("Ignoring invalid stored tolerance: " + e.getMessage());
+		}
+		setToleranceMode(settings.getEnum("toleranceMode", toleranceMode));
+		setFillAcrossTime(settings.getBoolean("fillAcrossTime", fillAcrossTime));
+		setProgressive(settings.getBoolean("progressive", progressive));
+		setUndoable(settings.getBoolean("undoable", undoable));
+	}
+
+	/** Returns true if only pixels equal to the clicked pixel are filled. */
+	private boolean isExact() {
+		for (final double t : tolerance) {
+			if (t > 0) return false;
+		}
+		return true;
+	}
+
 	/** Returns an initialized DrawingTool. */
 	private DrawingTool initDrawingTool(boolean altKeyDown, final Dataset ds) {
 		final OptionsChannels opts = getChannelOptions();
@@ -159,14 +409,118 @@ public class FloodFillTool extends AbstractTool {
 		return optionsService.getOptions(OptionsChannels.class);
 	}
 
+	/**
+	 * Returns the filler implementing the given connectivity and fill method,
+	 * or null if the pixel by pixel {@link FloodFiller} should be used.
+	 */
+	private AbstractFloodFiller createFiller(final Connectivity c,
+		final FillMethod m, final DrawingTool dTool)
+	{
+		final AbstractFloodFiller filler;
+		if (c.isVolumetric()) {
+			final VolumeFloodFiller volumeFiller = new VolumeFloodFiller(dTool);
+			volumeFiller.setIncludeTime(fillAcrossTime);
+			filler = volumeFiller;
+		}
+		// NB - the pixel by pixel filler only fills exact matches
+		else if (m == FillMethod.SCANLINE || m == FillMethod.PIXEL &&
+			!isExact())
+		{
+			filler = new ScanlineFloodFiller(dTool);
+		}
+		else if (m == FillMethod.PARALLEL) {
+			filler = new ParallelFloodFiller(dTool, threadCount);
+		}
+		else return null;
+		filler.setTolerance(new FillTolerance(tolerance,
+			toleranceMode == ToleranceMode.PERCENT));
+		return filler;
+	}
+
 	/** Actually does the flood fill. */
 	private void floodFill(final long u, final long v, final long[] position,
-		final Connectivity c, final DrawingTool dTool)
+		final Connectivity c, final AbstractFloodFiller filler,
+		final DrawingTool dTool)
+	{
+		dTool.setPosition(position);
+		if (filler != null) {
+			filler.fill(u, v, position, c.getNeighbors());
+			return;
+		}
+		final FloodFiller pixelFiller = new FloodFiller(dTool);
+		if (c == Connectivity.FOUR) pixelFiller.fill4(u, v, position);
+		else pixelFiller.fill8(u, v, position);
+	}
+
+	/**
+	 * Runs the flood fill on another thread. Every {@link #UPDATE_INTERVAL}
+	 * milliseconds the bounds of the pixels filled since the last update are
+	 * published, and once the fill is done (or cancelled) the bounds of all
+	 * filled pixels are.
+	 */
+	private void fillInBackground(final AbstractFloodFiller filler,
+		final long u, final long v, final long[] position, final Connectivity c)
 	{
+		final DrawingTool dTool = filler.getDrawingTool();
+		final Dataset dataset = dTool.getDataset();
+		final DirtyRegion region = new DirtyRegion(position.length);
+		final UndoJournal journal = undoable ? new UndoJournal() : null;
 		dTool.setPosition(position);
-		final FloodFiller filler = new FloodFiller(dTool);
-		if (c == Connectivity.FOUR) filler.fill4(u, v, position);
-		else filler.fill8(u, v, position);
+		filler.setDirtyRegion(region);
+		filler.setJournal(journal);
+		activeFiller = filler;
+		threadService.run(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					final Future<?> fill = threadService.run(new Runnable() {
+
+						@Override
+						public void run() {
+							filler.fill(u, v, position, c.getNeighbors());
+						}
+					});
+					while (true) {
+						try {
+							fill.get(UPDATE_INTERVAL, TimeUnit.MILLISECONDS);
+							break;
+						}
+						catch (final TimeoutException e) {
+							publishRegion(dataset, region.takeRecent(), true);
+						}
+					}
+				}
+				catch (final ExecutionException e) {
+					log().error("Flood fill failed", e.getCause());
+				}
+				catch (final InterruptedException e) {
+					filler.cancel();
+					Thread.currentThread().interrupt();
+				}
+				finally {
+					// NB - a cancelled fill can be undone like a finished one
+					if (journal != null) undoService.push(dataset, journal);
+					else undoService.clear(dataset);
+					publishRegion(dataset, region.getInterval(), true);
+					activeFiller = null;
+				}
+			}
+		});
+	}
+
+	/**
+	 * Publishes an update of the given region of the dataset, if any. Updates
+	 * from background threads are queued for the event dispatch thread.
+	 */
+	private void publishRegion(final Dataset dataset, final Interval interval,
+		final boolean later)
+	{
+		if (eventService == null || interval == null) return;
+		final DatasetRegionUpdatedEvent event =
+			new DatasetRegionUpdatedEvent(dataset, interval);
+		if (later) eventService.publishLater(event);
+		else eventService.publish(event);
 	}
 
 }
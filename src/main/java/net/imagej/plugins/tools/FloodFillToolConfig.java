@@ -35,42 +35,113 @@ import org.scijava.ItemIO;
 import org.scijava.command.Command;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
+import org.scijava.ui.DialogPrompt;
+import org.scijava.ui.UIService;
 
 /**
  * Implements the configuration code for {@link FloodFillTool}.
  * 
  * @author Barry DeZonia
  */
-@Plugin(type = Command.class, label = "Flood Fill Tool")
+@Plugin(type = Command.class, label = "Flood Fill Tool", initializer = "init")
 public class FloodFillToolConfig implements Command {
 
 	// -- constants --
 
 	private static final String FOUR = "4-connected";
 	private static final String EIGHT = "8-connected";
+	private static final String SIX = "6-connected (3D)";
+	private static final String EIGHTEEN = "18-connected (3D)";
+	private static final String TWENTY_SIX = "26-connected (3D)";
+	private static final String SCANLINE = "Scanline";
+	private static final String PARALLEL = "Parallel scanline";
+	private static final String PIXEL = "Pixel by pixel";
+	private static final String ABSOLUTE = "Absolute";
+	private static final String PERCENT = "Percent of clicked value";
 
 	// -- Parameters --
 
+	@Parameter
+	private UIService uiService;
+
 	@Parameter(type = ItemIO.BOTH)
 	private FloodFillTool tool;
 
-	// TODO - it would be nice to persist this. but the associated tool cannot
-	// persist values. thus you get in a situation that the dialog connectivity
-	// does not equal the tool's initial value which is confusing. Tools need to
-	// be able to persist some values to get around this.
+	// NB - the tool stores its own settings (see ToolSettings), so the dialog
+	// always opens with the values the tool is using.
 
-	@Parameter(label = "Flood Type:", choices = { EIGHT, FOUR },
-		initializer = "init", persist = false)
+	@Parameter(label = "Flood Type:", choices = { EIGHT, FOUR, SIX, EIGHTEEN,
+		TWENTY_SIX }, persist = false)
 	private String connectivity;
 
+	@Parameter(label = "3D Fills Include Time", persist = false)
+	private boolean acrossTime;
+
+	@Parameter(label = "Fill Method:", choices = { SCANLINE, PARALLEL, PIXEL },
+		persist = false)
+	private String method;
+
+	@Parameter(label = "Parallel Threads (0 = all processors):", min = "0",
+		persist = false)
+	private int threads;
+
+	// NB - one amount per channel, comma separated; one amount applies to all
+	@Parameter(label = "Tolerance (per channel):", persist = false)
+	private String tolerance;
+
+	@Parameter(label = "Tolerance Mode:", choices = { ABSOLUTE, PERCENT },
+		persist = false)
+	private String toleranceMode;
+
+	@Parameter(label = "Fill In Background (Escape cancels)", persist = false)
+	private boolean progressive;
+
+	@Parameter(label = "Undoable Fills (record overwritten pixels)",
+		persist = false)
+	private boolean undoable;
+
 	// -- public interface --
 
-	/** Configures the connectivity of the FloodFillTool */
+	/**
+	 * Configures the connectivity, fill method, tolerance, background filling
+	 * and undo recording of the FloodFillTool
+	 */
 	@Override
 	public void run() {
+		final double[] amounts;
+		try {
+			amounts = FillTolerance.parseAmounts(tolerance);
+		}
+		catch (final NumberFormatException e) {
+			// NB - no setting is changed, so the tool keeps working as before
+			uiService.showDialog("Invalid tolerance \"" + tolerance +
+				"\": enter one amount, or one amount per channel separated by " +
+				"commas.", "Flood Fill Tool", DialogPrompt.MessageType.ERROR_MESSAGE);
+			return;
+		}
 		if (connectivity.equals(FOUR))
 			tool.setConnectivity(FloodFillTool.Connectivity.FOUR);
+		else if (connectivity.equals(SIX))
+			tool.setConnectivity(FloodFillTool.Connectivity.SIX);
+		else if (connectivity.equals(EIGHTEEN))
+			tool.setConnectivity(FloodFillTool.Connectivity.EIGHTEEN);
+		else if (connectivity.equals(TWENTY_SIX))
+			tool.setConnectivity(FloodFillTool.Connectivity.TWENTY_SIX);
 		else tool.setConnectivity(FloodFillTool.Connectivity.EIGHT);
+		tool.setFillAcrossTime(acrossTime);
+		if (method.equals(PIXEL))
+			tool.setFillMethod(FloodFillTool.FillMethod.PIXEL);
+		else if (method.equals(PARALLEL))
+			tool.setFillMethod(FloodFillTool.FillMethod.PARALLEL);
+		else tool.setFillMethod(FloodFillTool.FillMethod.SCANLINE);
+		tool.setThreadCount(threads);
+		tool.setTolerance(amounts);
+		if (toleranceMode.equals(PERCENT))
+			tool.setToleranceMode(FloodFillTool.ToleranceMode.PERCENT);
+		else tool.setToleranceMode(FloodFillTool.ToleranceMode.ABSOLUTE);
+		tool.setProgressive(progressive);
+		tool.setUndoable(undoable);
+		tool.saveSettings();
 	}
 
 	// -- initializer --
@@ -78,7 +149,28 @@ public class FloodFillToolConfig implements Command {
 	protected void init() {
 		final FloodFillTool.Connectivity neighCount = tool.getConnectivity();
 		if (neighCount.equals(FloodFillTool.Connectivity.FOUR)) connectivity = FOUR;
+		else if (neighCount.equals(FloodFillTool.Connectivity.SIX)) {
+			connectivity = SIX;
+		}
+		else if (neighCount.equals(FloodFillTool.Connectivity.EIGHTEEN)) {
+			connectivity = EIGHTEEN;
+		}
+		else if (neighCount.equals(FloodFillTool.Connectivity.TWENTY_SIX)) {
+			connectivity = TWENTY_SIX;
+		}
 		else connectivity = EIGHT;
+		acrossTime = tool.isFillAcrossTime();
+		final FloodFillTool.FillMethod fillMethod = tool.getFillMethod();
+		if (fillMethod == FloodFillTool.FillMethod.PIXEL) method = PIXEL;
+		else if (fillMethod == FloodFillTool.FillMethod.PARALLEL) method = PARALLEL;
+		else method = SCANLINE;
+		threads = tool.getThreadCount();
+		tolerance = FillTolerance.formatAmounts(tool.getTolerance());
+		if (tool.getToleranceMode() == FloodFillTool.ToleranceMode.PERCENT)
+			toleranceMode = PERCENT;
+		else toleranceMode = ABSOLUTE;
+		progressive = tool.isProgressive();
+		undoable = tool.isUndoable();
 	}
 
 }
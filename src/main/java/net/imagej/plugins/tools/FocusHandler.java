@@ -47,7 +47,7 @@ import org.scijava.ui.UserInterface;
  * @author Curtis Rueden
  */
 @Plugin(type = Tool.class, name = "Window Focus")
-public class FocusHandler extends AbstractTool {
+public class FocusHandler extends AbstractTool implements KeyHandler {
 
 	@Parameter(required = false)
 	private UIService uiService;
@@ -58,7 +58,17 @@ public class FocusHandler extends AbstractTool {
 	}
 
 	@Override
-	public void onKeyDown(final KyPressedEvent evt) {
+	public KeyCode[] getKeyCodes() {
+		return new KeyCode[] { KeyCode.ENTER };
+	}
+
+	@Override
+	public char[] getKeyCharacters() {
+		return new char[0];
+	}
+
+	@Override
+	public void handleKey(final KyPressedEvent evt) {
 		if (evt.getCode() != KeyCode.ENTER) return;
 		if (uiService == null) return;
 		final UserInterface ui = uiService.getDefaultUI();
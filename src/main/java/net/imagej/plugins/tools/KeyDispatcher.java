@@ -0,0 +1,197 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2016 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.plugins.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.scijava.Priority;
+import org.scijava.display.event.input.KyPressedEvent;
+import org.scijava.event.EventHandler;
+import org.scijava.input.KeyCode;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.plugin.PluginInfo;
+import org.scijava.plugin.event.PluginsListEvent;
+import org.scijava.tool.Tool;
+import org.scijava.tool.ToolService;
+
+/**
+ * Routes key presses to the {@link KeyHandler}s that declare them. The
+ * handlers are indexed by key code and by character the first time a key is
+ * pressed, so that a key press costs a couple of table lookups and reaches only
+ * the handlers interested in it, in priority order, until one consumes it.
+ * Handlers whose key codes are null see every key press. The tables are
+ * rebuilt on the next key press after tools are added or removed. They hold
+ * up to 64 handlers; any lower priority ones are checked one by one after
+ * those.
+ */
+@Plugin(type = Tool.class, name = "Key Dispatcher",
+	priority = Priority.FIRST_PRIORITY)
+public class KeyDispatcher extends AbstractLazyHandler {
+
+	@Parameter
+	private ToolService toolService;
+
+	/** Handlers, highest priority first; bit i of a mask is handler i. */
+	private KeyHandler[] handlers;
+
+	/** Handlers past the first 64, highest priority first. */
+	private KeyHandler[] overflow;
+
+	private final long[] codeMasks = new long[KeyCode.values().length];
+	private final long[] asciiMasks = new long[128];
+	private final Map<Character, Long> charMasks =
+		new HashMap<Character, Long>();
+	private long wildcardMask;
+	private long appFrameMask;
+
+	@Override
+	public boolean isActiveInAppFrame() {
+		return true;
+	}
+
+	@Override
+	public void onKeyDown(final KyPressedEvent evt) {
+		ensureInitialized();
+		long mask = wildcardMask | charMask(evt.getCharacter());
+		final KeyCode code = evt.getCode();
+		if (code != null) mask |= codeMasks[code.ordinal()];
+		// NB - like the tool service, only offer app frame keys to those that
+		// are active there
+		if (evt.getDisplay() == null) mask &= appFrameMask;
+		while (mask != 0 && !evt.isConsumed()) {
+			final int i = Long.numberOfTrailingZeros(mask);
+			mask &= mask - 1;
+			handlers[i].handleKey(evt);
+		}
+		for (final KeyHandler handler : overflow) {
+			if (evt.isConsumed()) break;
+			if (evt.getDisplay() == null && !handler.isActiveInAppFrame()) {
+				continue;
+			}
+			if (!accepts(handler, code, evt.getCharacter())) continue;
+			handler.handleKey(evt);
+		}
+	}
+
+	// -- event handlers --
+
+	@EventHandler
+	protected void onEvent(final PluginsListEvent evt) {
+		for (final PluginInfo<?> info : evt.getItems()) {
+			if (!Tool.class.isAssignableFrom(info.getPluginType())) continue;
+			// NB - rebuilt on the next key press, once the tool service has
+			// updated its own list
+			invalidate();
+			return;
+		}
+	}
+
+	// -- AbstractLazyHandler methods --
+
+	@Override
+	protected void initialize() {
+		final List<KeyHandler> list = new ArrayList<KeyHandler>();
+		for (final Tool tool : getAlwaysActiveTools()) {
+			if (tool instanceof KeyHandler) list.add((KeyHandler) tool);
+		}
+		// NB - the tool service lists the tools in priority order
+		final int count = Math.min(list.size(), Long.SIZE);
+		handlers = list.subList(0, count).toArray(new KeyHandler[count]);
+		overflow = list.subList(count, list.size()).toArray(
+			new KeyHandler[list.size() - count]);
+		if (overflow.length > 0) {
+			log().debug(overflow.length + " key handlers past the first " +
+				Long.SIZE + " are checked one by one");
+		}
+		Arrays.fill(codeMasks, 0);
+		Arrays.fill(asciiMasks, 0);
+		charMasks.clear();
+		wildcardMask = 0;
+		appFrameMask = 0;
+		for (int i = 0; i < handlers.length; i++) {
+			final long bit = 1L << i;
+			if (handlers[i].isActiveInAppFrame()) appFrameMask |= bit;
+			final KeyCode[] codes = handlers[i].getKeyCodes();
+			if (codes == null) {
+				wildcardMask |= bit;
+				continue;
+			}
+			for (final KeyCode code : codes) {
+				codeMasks[code.ordinal()] |= bit;
+			}
+			for (final char c : handlers[i].getKeyCharacters()) {
+				if (c < asciiMasks.length) asciiMasks[c] |= bit;
+				else {
+					final Long mask = charMasks.get(c);
+					charMasks.put(c, mask == null ? bit : mask | bit);
+				}
+			}
+		}
+	}
+
+	// -- internal methods --
+
+	/** Gets the always active tools, highest priority first. */
+	protected List<Tool> getAlwaysActiveTools() {
+		return toolService.getAlwaysActiveTools();
+	}
+
+	// -- helpers --
+
+	/** Returns true if the given handler declares the given key. */
+	private static boolean accepts(final KeyHandler handler, final KeyCode code,
+		final char c)
+	{
+		final KeyCode[] codes = handler.getKeyCodes();
+		if (codes == null) return true;
+		for (final KeyCode k : codes) {
+			if (k == code) return true;
+		}
+		for (final char k : handler.getKeyCharacters()) {
+			if (k == c) return true;
+		}
+		return false;
+	}
+
+	private long charMask(final char c) {
+		if (c < asciiMasks.length) return asciiMasks[c];
+		if (charMasks.isEmpty()) return 0;
+		final Long mask = charMasks.get(c);
+		return mask == null ? 0 : mask;
+	}
+
+}
@@ -51,7 +51,9 @@ import org.scijava.util.TunePlayer;
  */
 @Plugin(type = Tool.class, name = "Konami",
 	priority = Priority.FIRST_PRIORITY)
-public class KonamiHandler extends AbstractTool implements Runnable {
+public class KonamiHandler extends AbstractTool implements KeyHandler,
+	Runnable
+{
 
 	private static final KeyCode[] CODE = { KeyCode.UP, KeyCode.UP, KeyCode.DOWN,
 		KeyCode.DOWN, KeyCode.LEFT, KeyCode.RIGHT, KeyCode.LEFT, KeyCode.RIGHT,
@@ -75,8 +77,19 @@ public class KonamiHandler extends AbstractTool implements Runnable {
 		return true;
 	}
 
+	/** Every key press counts, as a wrong key restarts the code. */
 	@Override
-	public void onKeyDown(final KyPressedEvent evt) {
+	public KeyCode[] getKeyCodes() {
+		return null;
+	}
+
+	@Override
+	public char[] getKeyCharacters() {
+		return new char[0];
+	}
+
+	@Override
+	public void handleKey(final KyPressedEvent evt) {
 		if (evt.getCode() == CODE[index]) {
 			index++;
 			if (index > CODE.length - 2) evt.consume();
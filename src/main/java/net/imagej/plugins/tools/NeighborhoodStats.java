@@ -0,0 +1,241 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2016 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.plugins.tools;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Statistics (count, mean, min, max, standard deviation) of the N x N
+ * neighborhood of a pixel in a plane, N being odd. The window values are kept
+ * in a ring buffer so that moving the center by one pixel only reads the
+ * column and/or row entering the window, and the sums are updated by
+ * subtracting the values leaving it. Pixels outside of the plane and NaN
+ * values are left out of the statistics.
+ */
+public class NeighborhoodStats {
+
+	// -- constants --
+
+	/** Number of incremental moves after which the sums are recomputed. */
+	private static final int REFRESH_INTERVAL = 256;
+
+	// -- instance variables --
+
+	private final int size;
+	private final int radius;
+	private final double[] window;
+
+	private RandomAccess<? extends RealType<?>> access;
+	private int xAxis, yAxis;
+	private long width, height;
+
+	private boolean valid;
+	private long centerX, centerY;
+	private int moves;
+
+	private int count;
+	private double sum, sumSq;
+	private double min, max;
+	private boolean extremaStale;
+
+	// -- constructor --
+
+	/** Creates statistics over size x size windows; size must be odd. */
+	public NeighborhoodStats(final int size) {
+		if (size < 1 || size % 2 == 0) {
+			throw new IllegalArgumentException("Size must be odd: " + size);
+		}
+		this.size = size;
+		radius = size / 2;
+		window = new double[size * size];
+	}
+
+	// -- public interface --
+
+	/** Gets the width and height of the neighborhood. */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Forgets the current window. Must be called whenever the plane, the
+	 * channel or the image the RandomAccess reads from changes.
+	 */
+	public void reset() {
+		valid = false;
+	}
+
+	/**
+	 * Moves the window to be centered on (cx,cy). The RandomAccess must be
+	 * positioned on the plane (and channel) of interest; only its X and Y
+	 * positions are changed.
+	 */
+	public void update(final RandomAccess<? extends RealType<?>> ra,
+		final int x, final int y, final long w, final long h, final long cx,
+		final long cy)
+	{
+		if (ra != access || x != xAxis || y != yAxis || w != width ||
+			h != height)
+		{
+			access = ra;
+			xAxis = x;
+			yAxis = y;
+			width = w;
+			height = h;
+			valid = false;
+		}
+		final long dx = cx - centerX;
+		final long dy = cy - centerY;
+		if (!valid || Math.abs(dx) > 1 || Math.abs(dy) > 1 ||
+			++moves >= REFRESH_INTERVAL)
+		{
+			refill(cx, cy);
+			return;
+		}
+		if (dx != 0) {
+			// the column entering the window takes the slots of the leaving one
+			final long u = cx + dx * radius;
+			for (long v = centerY - radius; v <= centerY + radius; v++) {
+				replace(u, v);
+			}
+			centerX = cx;
+		}
+		if (dy != 0) {
+			final long v = cy + dy * radius;
+			for (long u = centerX - radius; u <= centerX + radius; u++) {
+				replace(u, v);
+			}
+			centerY = cy;
+		}
+		if (extremaStale) findExtrema();
+	}
+
+	/** Gets the number of pixels the statistics are computed from. */
+	public int getCount() {
+		return count;
+	}
+
+	/** Gets the mean of the neighborhood, or NaN if it has no pixels. */
+	public double getMean() {
+		return count == 0 ? Double.NaN : sum / count;
+	}
+
+	/** Gets the minimum of the neighborhood, or NaN if it has no pixels. */
+	public double getMin() {
+		return count == 0 ? Double.NaN : min;
+	}
+
+	/** Gets the maximum of the neighborhood, or NaN if it has no pixels. */
+	public double getMax() {
+		return count == 0 ? Double.NaN : max;
+	}
+
+	/**
+	 * Gets the sample standard deviation of the neighborhood, or NaN if it has
+	 * fewer than two pixels.
+	 */
+	public double getStdDev() {
+		if (count < 2) return Double.NaN;
+		final double variance = (sumSq - sum * sum / count) / (count - 1);
+		return variance <= 0 ? 0 : Math.sqrt(variance);
+	}
+
+	// -- helpers --
+
+	/** Reads the whole window centered on (cx,cy). */
+	private void refill(final long cx, final long cy) {
+		centerX = cx;
+		centerY = cy;
+		count = 0;
+		sum = sumSq = 0;
+		for (long v = cy - radius; v <= cy + radius; v++) {
+			for (long u = cx - radius; u <= cx + radius; u++) {
+				final double value = read(u, v);
+				window[slot(u, v)] = value;
+				if (Double.isNaN(value)) continue;
+				count++;
+				sum += value;
+				sumSq += value * value;
+			}
+		}
+		findExtrema();
+		moves = 0;
+		valid = true;
+	}
+
+	/** Replaces the value of the slot of (u,v) with the value of (u,v). */
+	private void replace(final long u, final long v) {
+		final int slot = slot(u, v);
+		final double old = window[slot];
+		if (!Double.isNaN(old)) {
+			count--;
+			sum -= old;
+			sumSq -= old * old;
+			if (old == min || old == max) extremaStale = true;
+		}
+		final double value = read(u, v);
+		window[slot] = value;
+		if (Double.isNaN(value)) return;
+		count++;
+		sum += value;
+		sumSq += value * value;
+		if (!extremaStale) {
+			if (count == 1 || value < min) min = value;
+			if (count == 1 || value > max) max = value;
+		}
+	}
+
+	private void findExtrema() {
+		min = Double.POSITIVE_INFINITY;
+		max = Double.NEGATIVE_INFINITY;
+		for (final double value : window) {
+			if (value < min) min = value;
+			if (value > max) max = value;
+		}
+		extremaStale = false;
+	}
+
+	private double read(final long u, final long v) {
+		if (u < 0 || u >= width || v < 0 || v >= height) return Double.NaN;
+		access.setPosition(u, xAxis);
+		access.setPosition(v, yAxis);
+		return access.get().getRealDouble();
+	}
+
+	private int slot(final long u, final long v) {
+		final int row = (int) (((v % size) + size) % size);
+		final int col = (int) (((u % size) + size) % size);
+		return row * size + col;
+	}
+
+}
@@ -37,7 +37,8 @@ import org.scijava.plugin.Plugin;
 import org.scijava.tool.Tool;
 
 /**
- * Tool implementation for paint brush.
+ * Tool implementation for paint brush. Its strokes are drawn with a stamp of
+ * the chosen {@link BrushStamp.Shape}.
  * 
  * @author Barry DeZonia
  */
@@ -51,13 +52,45 @@ public class PaintBrushTool extends AbstractLineTool {
 	@Parameter
 	private CommandService commandService;
 
+	private BrushStamp.Shape brushShape = BrushStamp.Shape.CIRCLE;
+
 	public PaintBrushTool() {
 		setLineWidth(10);
 	}
 
+	/** Sets the shape of the brush tip. */
+	public void setBrushShape(final BrushStamp.Shape shape) {
+		brushShape = shape;
+	}
+
+	/** Gets the shape of the brush tip. */
+	public BrushStamp.Shape getBrushShape() {
+		return brushShape;
+	}
+
 	@Override
 	public void configure() {
+		loadSettings();
 		commandService.run(PaintBrushToolConfig.class, true, "tool", this);
 	}
 
+	// -- AbstractLineTool methods --
+
+	@Override
+	protected BrushStamp.Shape getStampShape() {
+		return brushShape;
+	}
+
+	@Override
+	protected void readSettings(final ToolSettings settings) {
+		super.readSettings(settings);
+		setBrushShape(settings.getEnum("brushShape", brushShape));
+	}
+
+	@Override
+	protected void writeSettings(final ToolSettings settings) {
+		super.writeSettings(settings);
+		settings.put("brushShape", brushShape);
+	}
+
 }
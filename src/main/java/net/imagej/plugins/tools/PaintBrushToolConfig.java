@@ -44,25 +44,50 @@ import org.scijava.plugin.Plugin;
 @Plugin(type = Command.class, label = "Paintbrush Tool")
 public class PaintBrushToolConfig implements Command {
 
+	// -- constants --
+
+	private static final String CIRCLE = "Circle";
+	private static final String SQUARE = "Square";
+
+	// -- Parameters --
+
 	@Parameter(type = ItemIO.BOTH)
 	private PaintBrushTool tool;
 
-	// TODO - it would be nice to persist this brush width. but the associated
-	// tool cannot persist its own width. thus you get in a situation that the
-	// dialog brush width does not equal the tool's initial value which is
-	// confusing. Tools need to be able to persist some values to get around this.
+	// NB - the brush settings are saved by the tool itself.
 
 	@Parameter(label = "Brush Width (pixels)", min = "1", persist = false,
 		initializer = "init")
 	private long width;
 
+	@Parameter(label = "Brush Shape", choices = { CIRCLE, SQUARE },
+		persist = false, initializer = "initShape")
+	private String shape;
+
+	@Parameter(label = "Display Updates Per Second", min = "1",
+		persist = false, initializer = "initFrameRate")
+	private int frameRate;
+
 	@Override
 	public void run() {
 		tool.setLineWidth(width);
+		if (shape.equals(SQUARE)) tool.setBrushShape(BrushStamp.Shape.SQUARE);
+		else tool.setBrushShape(BrushStamp.Shape.CIRCLE);
+		tool.setFrameRate(frameRate);
+		tool.saveSettings();
 	}
 
 	protected void init() {
 		width = tool.getLineWidth();
 	}
 
+	protected void initShape() {
+		if (tool.getBrushShape() == BrushStamp.Shape.SQUARE) shape = SQUARE;
+		else shape = CIRCLE;
+	}
+
+	protected void initFrameRate() {
+		frameRate = tool.getFrameRate();
+	}
+
 }
@@ -33,6 +33,7 @@ package net.imagej.plugins.tools;
 
 import org.scijava.display.event.input.KyPressedEvent;
 import org.scijava.display.event.input.KyReleasedEvent;
+import org.scijava.input.KeyCode;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
 import org.scijava.tool.AbstractTool;
@@ -45,7 +46,7 @@ import org.scijava.tool.ToolService;
  * @author Curtis Rueden
  */
 @Plugin(type = Tool.class, name = "Pan Activator")
-public class PanActivator extends AbstractTool {
+public class PanActivator extends AbstractTool implements KeyHandler {
 
 	/** Key used to activate pan tool. */
 	private static final char KEY = ' ';
@@ -62,7 +63,17 @@ public class PanActivator extends AbstractTool {
 	}
 
 	@Override
-	public void onKeyDown(final KyPressedEvent evt) {
+	public KeyCode[] getKeyCodes() {
+		return new KeyCode[0];
+	}
+
+	@Override
+	public char[] getKeyCharacters() {
+		return new char[] { KEY };
+	}
+
+	@Override
+	public void handleKey(final KyPressedEvent evt) {
 		if (evt.getCharacter() != KEY) return;
 		final Tool activeTool = toolService.getActiveTool();
 		final Tool panTool = toolService.getTool("Pan");
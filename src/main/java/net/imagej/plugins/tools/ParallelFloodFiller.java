@@ -0,0 +1,371 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2016 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.plugins.tools;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import net.imagej.Dataset;
+import net.imagej.DrawingTool;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+
+import org.scijava.util.LongArray;
+
+/**
+ * Span based flood filler that spreads the work over several threads. The
+ * plane is partitioned into square tiles which are filled concurrently by a
+ * {@link ForkJoinPool}. A tile only ever touches its own pixels; where a filled
+ * run reaches the border of its tile, the frontier span beyond the border is
+ * handed to the neighboring tile, which is scheduled if it is not already
+ * running. The fill is done once no tile has work left.
+ * <p>
+ * Pixel types that pack several pixels into one storage element (such as
+ * {@code BitType}) cannot be written from several threads at once, so those
+ * are filled by a {@link ScanlineFloodFiller} instead.
+ * </p>
+ */
+public class ParallelFloodFiller extends AbstractFloodFiller {
+
+	// -- constants --
+
+	/**
+	 * Tiles are this many pixels on a side. This is a multiple of the tile size
+	 * of the {@link TiledVisitedMask} so that no two tiles share mask words.
+	 */
+	public static final int TILE_SIZE = 2 * TiledVisitedMask.TILE_SIZE;
+
+	// -- instance variables --
+
+	private final int threadCount;
+	private volatile ScanlineFloodFiller fallback;
+
+	private PlaneAccessor access;
+	private TiledVisitedMask visited;
+	private long maxU, maxV, reach, tilesAcross;
+	private double[] minValues, maxValues;
+	private double[] fillValues;
+	private AtomicReferenceArray<Tile> tiles;
+	private ForkJoinPool pool;
+	private final AtomicInteger pending = new AtomicInteger();
+	private CountDownLatch done;
+	private volatile Throwable failure;
+
+	// -- constructor --
+
+	/**
+	 * Creates a filler that fills using the given number of threads. A count
+	 * less than one means one thread per available processor.
+	 */
+	public ParallelFloodFiller(final DrawingTool tool, final int threadCount) {
+		super(tool);
+		this.threadCount = threadCount < 1 ? Runtime.getRuntime()
+			.availableProcessors() : threadCount;
+	}
+
+	// -- AbstractFloodFiller methods --
+
+	@Override
+	public void fill(final long u0, final long v0, final long[] position,
+		final int connectivity)
+	{
+		if (connectivity == 4) fill4(u0, v0, position);
+		else if (connectivity == 8) fill8(u0, v0, position);
+		else throw new IllegalArgumentException("Unsupported connectivity: " +
+			connectivity);
+	}
+
+	@Override
+	public void cancel() {
+		super.cancel();
+		final ScanlineFloodFiller filler = fallback;
+		if (filler != null) filler.cancel();
+	}
+
+	// -- public interface --
+
+	/**
+	 * Does a 4-connected flood fill of the plane at the given position starting
+	 * from the given (u,v) seed point.
+	 */
+	public void fill4(final long u0, final long v0, final long[] position) {
+		if (isPacked(getDrawingTool().getDataset())) {
+			serialFiller().fill4(u0, v0, position);
+		}
+		else fillRegion(u0, v0, position, 0);
+	}
+
+	/**
+	 * Does an 8-connected flood fill of the plane at the given position starting
+	 * from the given (u,v) seed point.
+	 */
+	public void fill8(final long u0, final long v0, final long[] position) {
+		if (isPacked(getDrawingTool().getDataset())) {
+			serialFiller().fill8(u0, v0, position);
+		}
+		else fillRegion(u0, v0, position, 1);
+	}
+
+	// -- private helpers --
+
+	private void fillRegion(final long u0, final long v0, final long[] position,
+		final long r)
+	{
+		access = createAccessor(position);
+		maxU = access.getWidth() - 1;
+		maxV = access.getHeight() - 1;
+		if (u0 < 0 || u0 > maxU || v0 < 0 || v0 > maxV) return;
+		reach = r;
+		fillValues = access.pixelValues(getDrawingTool().getChannels());
+		final double[] seedValues = new double[access.getChannelCount()];
+		access.get(u0, v0, seedValues);
+		minValues = new double[seedValues.length];
+		maxValues = new double[seedValues.length];
+		getTolerance().bounds(seedValues, minValues, maxValues);
+		visited = new TiledVisitedMask(maxU + 1, maxV + 1);
+		tilesAcross = (maxU + TILE_SIZE) / TILE_SIZE;
+		final long tilesDown = (maxV + TILE_SIZE) / TILE_SIZE;
+		tiles = new AtomicReferenceArray<Tile>((int) (tilesAcross * tilesDown));
+		failure = null;
+		done = new CountDownLatch(1);
+		pool = new ForkJoinPool(threadCount);
+		try {
+			tile(u0, v0).offer(u0, u0, v0);
+			awaitTiles();
+		}
+		finally {
+			pool.shutdown();
+			pool = null;
+			tiles = null;
+			visited = null;
+			access = null;
+		}
+		if (failure != null) {
+			throw new IllegalStateException("Parallel flood fill failed", failure);
+		}
+	}
+
+	/**
+	 * Waits until no tile is queued or running. An interrupt cancels the fill,
+	 * but the wait goes on until the tiles have stopped, since they use the
+	 * shared fill state; the interrupt status is restored afterwards.
+	 */
+	private void awaitTiles() {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				done.await();
+				break;
+			}
+			catch (final InterruptedException e) {
+				interrupted = true;
+				cancel();
+			}
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+	}
+
+	private ScanlineFloodFiller serialFiller() {
+		final ScanlineFloodFiller filler =
+			new ScanlineFloodFiller(getDrawingTool());
+		filler.setTolerance(getTolerance());
+		filler.setDirtyRegion(getDirtyRegion());
+		filler.setJournal(getJournal());
+		fallback = filler;
+		if (isCancelled()) filler.cancel();
+		return filler;
+	}
+
+	/** Returns true if the pixels of ds share storage elements. */
+	private boolean isPacked(final Dataset ds) {
+		final RealType<?> type = ds.getType();
+		if (!(type instanceof NativeType)) return false;
+		return ((NativeType<?>) type).getEntitiesPerPixel().getRatio() < 1;
+	}
+
+	/** Returns the tile containing (u,v), creating it if needed. */
+	private Tile tile(final long u, final long v) {
+		final int index = (int) (v / TILE_SIZE * tilesAcross + u / TILE_SIZE);
+		final Tile tile = tiles.get(index);
+		if (tile != null) return tile;
+		tiles.compareAndSet(index, null, new Tile(u / TILE_SIZE));
+		return tiles.get(index);
+	}
+
+	// -- helper classes --
+
+	/**
+	 * One tile of the plane along with the frontier spans that other tiles have
+	 * handed to it. A tile is scheduled on the pool at most once at a time.
+	 */
+	private class Tile implements Runnable {
+
+		private final long firstU, lastU;
+
+		/** Pending (u0, u1, v) spans; guarded by this. */
+		private LongArray incoming = new LongArray();
+
+		/** Whether this tile is queued or running; guarded by this. */
+		private boolean scheduled;
+
+		// per run state
+		private PlaneAccessor local;
+		private LongArray seeds;
+
+		public Tile(final long col) {
+			firstU = col * TILE_SIZE;
+			lastU = Math.min(firstU + TILE_SIZE - 1, maxU);
+		}
+
+		/** Hands span [u0,u1] of line v to this tile. */
+		public void offer(final long u0, final long u1, final long v) {
+			final boolean schedule;
+			synchronized (this) {
+				incoming.addValue(u0);
+				incoming.addValue(u1);
+				incoming.addValue(v);
+				schedule = !scheduled;
+				scheduled = true;
+			}
+			if (schedule) {
+				pending.incrementAndGet();
+				pool.execute(this);
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				local = access.copy();
+				seeds = new LongArray();
+				LongArray work = take();
+				while (work != null) {
+					for (int i = 0; i < work.size(); i += 3) {
+						pushRuns(work.getValue(i), work.getValue(i + 1), work
+							.getValue(i + 2));
+					}
+					drain();
+					work = take();
+				}
+			}
+			catch (final Throwable t) {
+				failure = t;
+			}
+			finally {
+				local = null;
+				seeds = null;
+				if (pending.decrementAndGet() == 0) done.countDown();
+			}
+		}
+
+		/** Returns the pending spans, or null (and unschedules) if none. */
+		private synchronized LongArray take() {
+			if (incoming.size() == 0) {
+				scheduled = false;
+				return null;
+			}
+			final LongArray work = incoming;
+			incoming = new LongArray();
+			return work;
+		}
+
+		/** Fills the runs reachable from the seeds without leaving the tile. */
+		private void drain() {
+			while (seeds.size() > 0 && !isCancelled()) {
+				final long v = pop();
+				final long u = pop();
+				if (!matches(u, v)) continue;
+				long left = u;
+				while (left > firstU && matches(left - 1, v))
+					left--;
+				long right = u;
+				while (right < lastU && matches(right + 1, v))
+					right++;
+				local.setRun(left, right, v, fillValues);
+				visited.setRun(left, right, v);
+				if (left == firstU && left > 0) emit(left - 1, left - 1, v);
+				if (right == lastU && right < maxU) emit(right + 1, right + 1, v);
+				final long from = Math.max(left - reach, 0);
+				final long to = Math.min(right + reach, maxU);
+				if (v > 0) emit(from, to, v - 1);
+				if (v < maxV) emit(from, to, v + 1);
+			}
+		}
+
+		/**
+		 * Splits span [from,to] of line v along tile borders, scanning the parts
+		 * inside this tile and handing the others to their tiles.
+		 */
+		private void emit(final long from, final long to, final long v) {
+			long u = from;
+			while (u <= to) {
+				final long end = Math.min(to, u | (TILE_SIZE - 1));
+				final Tile target = tile(u, v);
+				if (target == this) pushRuns(u, end, v);
+				else target.offer(u, end, v);
+				u = end + 1;
+			}
+		}
+
+		/** Pushes the first pixel of each matching run within [from,to]. */
+		private void pushRuns(final long from, final long to, final long v) {
+			boolean inRun = false;
+			for (long u = from; u <= to; u++) {
+				if (matches(u, v)) {
+					if (!inRun) push(u, v);
+					inRun = true;
+				}
+				else inRun = false;
+			}
+		}
+
+		private boolean matches(final long u, final long v) {
+			return !visited.isSet(u, v) && local.inRange(u, v, minValues, maxValues);
+		}
+
+		private void push(final long u, final long v) {
+			seeds.addValue(u);
+			seeds.addValue(v);
+		}
+
+		private long pop() {
+			final int last = seeds.size() - 1;
+			final long value = seeds.getValue(last);
+			seeds.setSize(last);
+			return value;
+		}
+
+	}
+
+}
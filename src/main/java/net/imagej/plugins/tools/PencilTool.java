@@ -56,6 +56,7 @@ public class PencilTool extends AbstractLineTool {
 
 	@Override
 	public void configure() {
+		loadSettings();
 		commandService.run(PencilToolConfig.class, true, "tool", this);
 	}
 
@@ -47,22 +47,29 @@ public class PencilToolConfig implements Command {
 	@Parameter(type = ItemIO.BOTH)
 	private PencilTool tool;
 
-	// TODO - it would be nice to persist this pencil width. but the associated
-	// tool cannot persist its own width. thus you get in a situation that the
-	// dialog pencil width does not equal the tool's initial value which is
-	// confusing. Tools need to be able to persist some values to get around this.
+	// NB - the pencil width is saved along with the tool's other settings.
 
 	@Parameter(label = "Pencil Width (pixels)", min = "1", persist = false,
 		initializer = "init")
 	private long width;
 
+	@Parameter(label = "Display Updates Per Second", min = "1",
+		persist = false, initializer = "initFrameRate")
+	private int frameRate;
+
 	@Override
 	public void run() {
 		tool.setLineWidth(width);
+		tool.setFrameRate(frameRate);
+		tool.saveSettings();
 	}
 
 	protected void init() {
 		width = tool.getLineWidth();
 	}
 
+	protected void initFrameRate() {
+		frameRate = tool.getFrameRate();
+	}
+
 }
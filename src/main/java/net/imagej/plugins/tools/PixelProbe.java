@@ -31,25 +31,38 @@
 
 package net.imagej.plugins.tools;
 
-import net.imagej.ChannelCollection;
+import net.imagej.Dataset;
 import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
 import net.imagej.display.ImageDisplay;
 import net.imagej.display.ImageDisplayService;
+import net.imagej.event.DatasetUpdatedEvent;
 
 import org.scijava.app.StatusService;
+import org.scijava.command.CommandService;
 import org.scijava.display.event.input.MsMovedEvent;
+import org.scijava.event.EventHandler;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
-import org.scijava.tool.AbstractTool;
+import org.scijava.thread.ThreadService;
 import org.scijava.tool.Tool;
 
 /**
  * Displays pixel values under the cursor.
+ * <p>
+ * Mouse moves are coalesced: the status is updated at most a configurable
+ * number of times per second, and a move arriving too early is remembered and
+ * shown at the end of the current interval. A move to the pixel that is
+ * already shown does not update the status at all.
+ * </p>
  * 
  * @author Barry DeZonia
  */
 @Plugin(type = Tool.class, name = "Probe")
-public class PixelProbe extends AbstractTool {
+public class PixelProbe extends AbstractLazyHandler {
+
+	/** The most profile values shown in the status. */
+	private static final int MAX_PROFILE_VALUES = 32;
 
 	@Parameter
 	private StatusService statusService;
@@ -57,22 +70,129 @@ public class PixelProbe extends AbstractTool {
 	@Parameter
 	private ImageDisplayService imageDisplayService;
 
+	@Parameter(required = false)
+	private CommandService commandService;
+
+	@Parameter(required = false)
+	private ThreadService threadService;
+
+	// NB - created on the first mouse move
 	private PixelRecorder recorder;
 
+	private int updateRate = 30;
+
+	// coalescing state
+	private final StringBuilder builder = new StringBuilder();
+	private long lastUpdateTime;
+	private MsMovedEvent pendingEvent;
+	private boolean updateScheduled;
+	private ImageDisplay shownDisplay;
+	private Dataset shownDataset;
+	private long shownX, shownY;
+	private long[] shownPlane = new long[0];
+
+	// -- PixelProbe methods --
+
+	/**
+	 * Sets the maximum number of status updates per second. Zero updates the
+	 * status on every mouse move.
+	 */
+	public void setUpdateRate(final int rate) {
+		if (rate < 0) updateRate = 0;
+		else updateRate = rate;
+	}
+
+	/** Gets the maximum number of status updates per second. */
+	public int getUpdateRate() {
+		return updateRate;
+	}
+
+	/**
+	 * Sets the width and height of the neighborhood around the cursor whose
+	 * mean, min, max and standard deviation are shown. A size of 1 or less
+	 * shows no neighborhood statistics.
+	 */
+	public void setNeighborhoodSize(final int size) {
+		recorder().setNeighborhoodSize(size);
+		shownDisplay = null;
+	}
+
+	/** Gets the width and height of the neighborhood around the cursor. */
+	public int getNeighborhoodSize() {
+		return recorder().getNeighborhoodSize();
+	}
+
+	/**
+	 * Sets the axis (typically Z or TIME) along which the values of the
+	 * displayed channel at the cursor are shown. Null shows no profile.
+	 */
+	public void setProfileAxis(final AxisType axis) {
+		recorder().setProfileAxis(axis);
+		shownDisplay = null;
+	}
+
+	/** Gets the axis along which a profile is shown, or null if none. */
+	public AxisType getProfileAxis() {
+		return recorder().getProfileAxis();
+	}
+
 	// -- Tool methods --
 
 	@Override
-	public boolean isAlwaysActive() {
-		return true;
+	public void configure() {
+		if (commandService == null) return;
+		commandService.run(PixelProbeConfig.class, true, "tool", this);
 	}
 
 	// NB - this tool does not consume the events by design
 	
 	@Override
 	public void onMouseMove(final MsMovedEvent evt) {
+		if (updateRate > 0 && threadService != null) {
+			final long wait =
+				lastUpdateTime + 1000 / updateRate - System.currentTimeMillis();
+			if (wait > 0) {
+				pendingEvent = evt;
+				scheduleUpdate(wait);
+				return;
+			}
+		}
+		pendingEvent = null;
+		probe(evt);
+	}
+
+	// -- event handlers --
+
+	@EventHandler
+	protected void onEvent(final DatasetUpdatedEvent evt) {
+		if (evt.isMetaDataOnly()) return;
+		// NB - the shown pixel may have new values
+		if (evt.getObject() == shownDataset) shownDisplay = null;
+		// NB - the neighborhood window must not keep the old pixel values
+		if (recorder != null) recorder.datasetChanged(evt.getObject());
+	}
+
+	// -- AbstractLazyHandler methods --
+
+	@Override
+	protected void initialize() {
+		recorder = new PixelRecorder(getContext(), false);
+	}
+
+	// -- helpers --
+
+	/** Shows the pixel values of the given event in the status bar. */
+	private void probe(final MsMovedEvent evt) {
+		lastUpdateTime = System.currentTimeMillis();
 		final ImageDisplay disp = imageDisplayService.getActiveImageDisplay();
 		if (disp == null || !recorder().record(evt)) {
-			statusService.clearStatus();
+			// NB - the recorder keeps its dataset while the mouse is over it
+			recorder().releaseDataset();
+			if (shownDisplay != null) {
+				shownDisplay = null;
+				shownDataset = null;
+				statusService.clearStatus();
+			}
 			return;
 		}
 		final int xAxis = disp.dimensionIndex(Axes.X);
@@ -80,13 +200,25 @@ public class PixelProbe extends AbstractTool {
 		final int channelIndex = disp.dimensionIndex(Axes.CHANNEL);
 		final long cx = recorder().getCX();
 		final long cy = recorder().getCY();
-		ChannelCollection values = recorder().getValues();
-		StringBuilder builder = new StringBuilder();
+		final int currChannel =
+			channelIndex < 0 ? 0 : disp.getIntPosition(channelIndex);
+		final Dataset dataset = recorder().getDataset();
+		// NB - the plane is noted on every update, whatever else changed
+		final boolean samePlane = isShownPlane(disp);
+		if (disp == shownDisplay && dataset == shownDataset && cx == shownX &&
+			cy == shownY && samePlane)
+		{
+			return;
+		}
+		shownDisplay = disp;
+		shownDataset = dataset;
+		shownX = cx;
+		shownY = cy;
+		builder.setLength(0);
 		builder.append("x=");
 		final double xValue = disp.axis(xAxis).calibratedValue(cx);
 		if (!Double.isNaN(xValue) && xValue != cx) {
-			String calibratedVal = String.format("%.2f", xValue);
-			builder.append(calibratedVal);
+			appendFixed(builder, xValue, 2);
 		}
 		else
 			builder.append(cx);
@@ -97,8 +229,7 @@ public class PixelProbe extends AbstractTool {
 		builder.append(", y=");
 		final double yValue = disp.axis(yAxis).calibratedValue(cy);
 		if (!Double.isNaN(yValue) && yValue != cy) {
-			String calibratedVal = String.format("%.2f", yValue);
-			builder.append(calibratedVal);
+			appendFixed(builder, yValue, 2);
 		}
 		else
 			builder.append(cy);
@@ -108,38 +239,134 @@ public class PixelProbe extends AbstractTool {
 		}
 		builder.append(", value=");
 		// single channel image
-		if (channelIndex == -1 ||
-				recorder().getDataset().dimension(channelIndex) == 1)
+		if (channelIndex == -1 || dataset.dimension(channelIndex) == 1)
 		{
-			String valueStr = valueString(values.getChannelValue(0));
-			builder.append(valueStr);
+			appendValue(recorder().getChannelValue(0));
 		}
 		else { // has multiple channels
-			int currChannel = disp.getIntPosition(channelIndex);
-			String valueStr = valueString(values.getChannelValue(currChannel));
-			builder.append(valueStr);
+			appendValue(recorder().getChannelValue(currChannel));
 			builder.append(" from (");
-			for (int i = 0; i < values.getChannelCount(); i++) {
-				valueStr = valueString(values.getChannelValue(i));
+			for (int i = 0; i < recorder().getChannelCount(); i++) {
 				if (i > 0) builder.append(",");
-				builder.append(valueStr);
+				appendValue(recorder().getChannelValue(i));
 			}
 			builder.append(")");
 		}
-		recorder().releaseDataset();
+		final int profileLength = recorder().getProfileLength();
+		if (profileLength > 0) {
+			builder.append(", ");
+			builder.append(recorder().getProfileAxis().getLabel());
+			builder.append(" profile=(");
+			for (int i = 0; i < profileLength && i < MAX_PROFILE_VALUES; i++) {
+				if (i > 0) builder.append(",");
+				appendValue(recorder().getProfileValue(i));
+			}
+			if (profileLength > MAX_PROFILE_VALUES) builder.append(",...");
+			builder.append(")");
+		}
+		final NeighborhoodStats stats = recorder().getNeighborhood();
+		if (stats != null) {
+			builder.append(", ");
+			builder.append(stats.getSize());
+			builder.append("x");
+			builder.append(stats.getSize());
+			builder.append(" mean=");
+			appendFixed(builder, stats.getMean(), 4);
+			builder.append(" min=");
+			appendValue(stats.getMin());
+			builder.append(" max=");
+			appendValue(stats.getMax());
+			builder.append(" sd=");
+			appendFixed(builder, stats.getStdDev(), 4);
+		}
 		statusService.showStatus(builder.toString());
 	}
-	
-	// -- helpers --
-	
-	private String valueString(double value) {
-		if (recorder().getDataset().isInteger())
-			return String.format("%d",(long)value);
-		return String.format("%f", value);
+
+	/**
+	 * Returns true if the display shows the plane that was shown at the last
+	 * update, and records the displayed plane otherwise.
+	 */
+	private boolean isShownPlane(final ImageDisplay disp) {
+		boolean same = shownPlane.length == disp.numDimensions();
+		if (!same) shownPlane = new long[disp.numDimensions()];
+		for (int d = 0; d < shownPlane.length; d++) {
+			final long pos = disp.getLongPosition(d);
+			if (shownPlane[d] != pos) {
+				shownPlane[d] = pos;
+				same = false;
+			}
+		}
+		return same;
+	}
+
+	/**
+	 * Makes sure the pending mouse move is shown once the given number of
+	 * milliseconds have passed.
+	 */
+	private void scheduleUpdate(final long wait) {
+		if (updateScheduled) return;
+		updateScheduled = true;
+		threadService.run(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(wait);
+				}
+				catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				// NB - probe on the dispatch thread like the mouse events do
+				threadService.queue(new Runnable() {
+
+					@Override
+					public void run() {
+						updateScheduled = false;
+						final MsMovedEvent evt = pendingEvent;
+						pendingEvent = null;
+						if (evt != null) probe(evt);
+					}
+				});
+			}
+		});
+	}
+
+	private void appendValue(final double value) {
+		if (recorder().getDataset().isInteger()) builder.append((long) value);
+		else appendFixed(builder, value, 6);
+	}
+
+	/**
+	 * Appends the value with the given number of decimals, like
+	 * String.format("%.nf") would but without its parsing and allocations. The
+	 * last decimal may be rounded differently.
+	 */
+	private static void appendFixed(final StringBuilder sb, final double value,
+		final int decimals)
+	{
+		long scale = 1;
+		for (int i = 0; i < decimals; i++)
+			scale *= 10;
+		// NB - values too big to scale into a long take the slow path
+		if (Double.isNaN(value) || Double.isInfinite(value) ||
+			Math.abs(value) >= Long.MAX_VALUE / scale)
+		{
+			sb.append(String.format("%." + decimals + "f", value));
+			return;
+		}
+		final long scaled = Math.round(Math.abs(value) * scale);
+		if (value < 0 && scaled != 0) sb.append('-');
+		sb.append(scaled / scale);
+		if (decimals == 0) return;
+		sb.append('.');
+		final long fraction = scaled % scale;
+		for (long digit = scale / 10; digit > 1 && fraction < digit; digit /= 10)
+			sb.append('0');
+		sb.append(fraction);
 	}
 
 	private PixelRecorder recorder() {
-		if (recorder == null) recorder = new PixelRecorder(getContext(), false);
+		ensureInitialized();
 		return recorder;
 	}
 
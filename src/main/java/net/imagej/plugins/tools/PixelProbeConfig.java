@@ -0,0 +1,87 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2016 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.plugins.tools;
+
+import net.imagej.axis.Axes;
+
+import org.scijava.ItemIO;
+import org.scijava.command.Command;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+
+/**
+ * Implements the configuration code for {@link PixelProbe}.
+ */
+@Plugin(type = Command.class, label = "Pixel Probe", initializer = "init")
+public class PixelProbeConfig implements Command {
+
+	// -- constants --
+
+	private static final String NONE = "None";
+	private static final String Z = "Z";
+	private static final String TIME = "Time";
+
+	// -- Parameters --
+
+	@Parameter(type = ItemIO.BOTH)
+	private PixelProbe tool;
+
+	@Parameter(label = "Status Updates Per Second (0 = every move):",
+		min = "0", persist = false)
+	private int updateRate;
+
+	@Parameter(label = "Neighborhood Statistics Size (1 = off):", min = "1",
+		max = "255", persist = false)
+	private int neighborhoodSize;
+
+	@Parameter(label = "Show Profile Along:", choices = { NONE, Z, TIME },
+		persist = false)
+	private String profileAxis;
+
+	@Override
+	public void run() {
+		tool.setUpdateRate(updateRate);
+		tool.setNeighborhoodSize(neighborhoodSize);
+		if (profileAxis.equals(Z)) tool.setProfileAxis(Axes.Z);
+		else if (profileAxis.equals(TIME)) tool.setProfileAxis(Axes.TIME);
+		else tool.setProfileAxis(null);
+	}
+
+	protected void init() {
+		updateRate = tool.getUpdateRate();
+		neighborhoodSize = tool.getNeighborhoodSize();
+		if (tool.getProfileAxis() == Axes.Z) profileAxis = Z;
+		else if (tool.getProfileAxis() == Axes.TIME) profileAxis = TIME;
+		else profileAxis = NONE;
+	}
+
+}
@@ -31,14 +31,14 @@
 
 package net.imagej.plugins.tools;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 import net.imagej.ChannelCollection;
 import net.imagej.Dataset;
 import net.imagej.Position;
 import net.imagej.axis.Axes;
-import net.imagej.display.DataView;
+import net.imagej.axis.AxisType;
 import net.imagej.display.DatasetView;
 import net.imagej.display.ImageCanvas;
 import net.imagej.display.ImageDisplay;
@@ -60,6 +60,18 @@ import org.scijava.util.RealCoords;
 /**
  * Gathers pixel information (location, channel values) of pixel associated
  * with a given mouse event.
+ * <p>
+ * A recorder is meant to be reused for many events. It keeps its RandomAccess
+ * and channel value buffer between events and only rebuilds them when the
+ * image being probed changes, and only repositions the plane axes when the
+ * displayed plane changes. Until {@link #releaseDataset()} is called the
+ * recorder thus holds on to the last image it recorded from.
+ * </p>
+ * <p>
+ * The channel values, and the optional profile along another axis, are each
+ * read in one pass that steps the RandomAccess along that axis with fwd()
+ * instead of repositioning it for every value.
+ * </p>
  * 
  * @author Barry DeZonia
  * @author Rick Lentz
@@ -80,7 +92,23 @@ public class PixelRecorder {
 	private ColorRGB color = Colors.BLACK;
 	private boolean wasAltKeyDown = false;
 	private boolean recordColor = false;
-	
+
+	// state reused between events
+	private final IntCoords mousePos = new IntCoords(0, 0);
+	private Img<? extends RealType<?>> image;
+	private RandomAccess<? extends RealType<?>> randomAccess;
+	private int xAxis, yAxis, chanAxis;
+	private int channelCount;
+	private double[] values = new double[0];
+	private long[] planePosition;
+	private boolean planeKnown;
+	private long planeChannel;
+	private NeighborhoodStats neighborhood;
+	private AxisType profileAxis;
+	private int profileIndex = -1;
+	private double[] profile = new double[0];
+	private int profileLength;
+
 	// -- public interface --
 
 	/** Constructor */
@@ -88,7 +116,6 @@ public class PixelRecorder {
 		context.inject(this);
 
 		this.recordColor = recordColor;
-		channels = new ChannelCollection();
 	}
 
 	/**
@@ -103,7 +130,8 @@ public class PixelRecorder {
 		final ImageDisplay imageDisplay = (ImageDisplay) display;
 
 		final ImageCanvas canvas = imageDisplay.getCanvas();
-		final IntCoords mousePos = new IntCoords(evt.getX(), evt.getY());
+		mousePos.x = evt.getX();
+		mousePos.y = evt.getY();
 		if (!canvas.isInImage(mousePos)) return false;
 
 		// mouse is over image
@@ -112,41 +140,15 @@ public class PixelRecorder {
 				evt.getModifiers().isAltDown() || evt.getModifiers().isAltGrDown();
 
 		// TODO - update tool to probe more than just the active view
-		final DataView activeView = imageDisplay.getActiveView();
 		dataset = imageDisplayService.getActiveDataset(imageDisplay);
-
-		final Img<? extends RealType<?>> image = dataset.getImgPlus();
-		final RandomAccess<? extends RealType<?>> randomAccess =
-			image.randomAccess();
-		final int xAxis = dataset.dimensionIndex(Axes.X);
-		final int yAxis = dataset.dimensionIndex(Axes.Y);
-		final int chanAxis = dataset.dimensionIndex(Axes.CHANNEL);
+		if (dataset.getImgPlus() != image) initAccess();
 
 		final RealCoords coords = canvas.panelToDataCoords(mousePos);
 		cx = coords.getLongX();
 		cy = coords.getLongY();
 
-		Position planePos = activeView.getPlanePosition();
-		long[] otherPositions;
-		// channel axis not present?
-		if (chanAxis == -1) {
-			// record all positions
-			otherPositions = new long[planePos.numDimensions()];
-			for (int i = 0; i < planePos.numDimensions(); i++) {
-				otherPositions[i] = planePos.getLongPosition(i);
-			}
-		}
-		else { // channel axis is present
-			// record all positions that are not a channel position
-			otherPositions = new long[planePos.numDimensions()-1];
-			int d = 0;
-			for (int i = 0; i < planePos.numDimensions(); i++) {
-				// TODO - this test of ch-2 will break when X & Y can exist outside
-				//   first two axes.
-				if (i != chanAxis-2) otherPositions[d++] = planePos.getLongPosition(i);
-			}
-		}
-		
+		setPlanePosition(imageDisplay.getActiveView().getPlanePosition());
+
 		// record color of displayed pixel
 		if (recordColor) {
 			final DatasetView view =
@@ -162,23 +164,101 @@ public class PixelRecorder {
 		}
 
 		// record channel values associated with the XY coord
-		long numChannels;
-		if (chanAxis == -1)
-			numChannels = 1;
-		else
-			numChannels = dataset.dimension(chanAxis); 
-		List<Double> values = new LinkedList<Double>();
-		for (long chan = 0; chan < numChannels; chan++) {
-			setPosition(randomAccess, cx, cy, chan, otherPositions, xAxis, yAxis, chanAxis);
-			double value = randomAccess.get().getRealDouble();
-			values.add(value);
+		randomAccess.setPosition(cx, xAxis);
+		randomAccess.setPosition(cy, yAxis);
+		readLine(chanAxis, values, channelCount);
+		channels = null;
+		if (chanAxis >= 0) randomAccess.setPosition(planeChannel, chanAxis);
+
+		// record the profile of the displayed channel along the profile axis
+		profileLength = 0;
+		if (profileIndex >= 0) {
+			final int length = (int) dataset.dimension(profileIndex);
+			if (profile.length < length) profile = new double[length];
+			readLine(profileIndex, profile, length);
+			randomAccess.setPosition(planePosition[profileIndex], profileIndex);
+			profileLength = length;
+		}
+
+		// record statistics of the neighborhood in the displayed channel
+		if (neighborhood != null) {
+			neighborhood.update(randomAccess, xAxis, yAxis, dataset
+				.dimension(xAxis), dataset.dimension(yAxis), cx, cy);
 		}
-		
-		channels = new ChannelCollection(values);
-		
+
 		return true;
 	}
 
+	/**
+	 * Sets the width and height of the neighborhood whose statistics are
+	 * recorded along with the pixel values. Even sizes are rounded up to the
+	 * next odd size; a size of 1 or less turns neighborhood statistics off.
+	 */
+	public void setNeighborhoodSize(final int size) {
+		if (size <= 1) neighborhood = null;
+		else if (neighborhood == null || neighborhood.getSize() != (size | 1)) {
+			neighborhood = new NeighborhoodStats(size | 1);
+		}
+	}
+
+	/** Gets the width and height of the recorded neighborhood. */
+	public int getNeighborhoodSize() {
+		return neighborhood == null ? 1 : neighborhood.getSize();
+	}
+
+	/**
+	 * Returns the statistics of the neighborhood of the processed mouse event in
+	 * the displayed channel, or null if neighborhood statistics are off.
+	 */
+	public NeighborhoodStats getNeighborhood() {
+		return neighborhood;
+	}
+
+	/**
+	 * Sets the axis (typically Z or TIME) along which a profile of the
+	 * displayed channel is recorded at the pixel of each mouse event. Null, or
+	 * an X, Y or CHANNEL axis, records no profile.
+	 */
+	public void setProfileAxis(final AxisType axis) {
+		if (axis == Axes.X || axis == Axes.Y || axis == Axes.CHANNEL) {
+			profileAxis = null;
+		}
+		else profileAxis = axis;
+		if (dataset != null) findProfileAxis();
+	}
+
+	/** Gets the axis along which profiles are recorded, or null if none. */
+	public AxisType getProfileAxis() {
+		return profileAxis;
+	}
+
+	/**
+	 * Returns the number of values of the profile of the processed mouse event.
+	 * This is zero if no profile is recorded or the dataset lacks the axis.
+	 */
+	public int getProfileLength() {
+		return profileLength;
+	}
+
+	/** Returns the value at the given index of the recorded profile. */
+	public double getProfileValue(final int index) {
+		return profile[index];
+	}
+
+	/**
+	 * Copies the values of all the channels associated with the processed mouse
+	 * event into the given array, which is allocated if null or too short.
+	 * 
+	 * @return the array holding the values
+	 */
+	public double[] getChannelValues(final double[] dest) {
+		final double[] buffer =
+			dest == null || dest.length < channelCount ? new double[channelCount]
+				: dest;
+		System.arraycopy(values, 0, buffer, 0, channelCount);
+		return buffer;
+	}
+
 	/** Returns the Dataset associated with the processed mouse event. */
 	public Dataset getDataset() {
 		return dataset;
@@ -187,9 +267,29 @@ public class PixelRecorder {
 	/** Returns the values of all the channels associated with the processed
 	 * mouse event. */
 	public ChannelCollection getValues() {
+		if (channels == null) {
+			final List<Double> list = new ArrayList<Double>(channelCount);
+			for (int chan = 0; chan < channelCount; chan++) {
+				list.add(values[chan]);
+			}
+			channels = new ChannelCollection(list);
+		}
 		return channels;
 	}
 
+	/** Returns the number of channels of the processed mouse event. */
+	public int getChannelCount() {
+		return channelCount;
+	}
+
+	/**
+	 * Returns the value of the given channel associated with the processed
+	 * mouse event. Unlike {@link #getValues()} this does not allocate.
+	 */
+	public double getChannelValue(final int chan) {
+		return values[chan];
+	}
+
 	/**
 	 * Returns the color of the pixel associated with the processed mouse event.
 	 */
@@ -213,25 +313,81 @@ public class PixelRecorder {
 		return wasAltKeyDown;
 	}
 
+	/**
+	 * Releases the dataset of the processed mouse event, along with the state
+	 * kept to record later events from it.
+	 */
 	public void releaseDataset() {
 		dataset = null;
+		image = null;
+		randomAccess = null;
+	}
+
+	/**
+	 * Tells the recorder that the pixels or structure of the given dataset have
+	 * changed. If it is the recorded dataset, the state kept for it, including
+	 * the neighborhood window, is rebuilt by the next recording.
+	 */
+	public void datasetChanged(final Dataset changed) {
+		if (changed == dataset) releaseDataset();
 	}
 	
 	// -- private helpers --
 
-	/** Sets the position of a randomAccess to (u,v,planePos). */
-	private void setPosition(
-		final RandomAccess<? extends RealType<?>> randomAccess, final long x,
-		final long y, final long c, final long[] otherCoordValues, final int xAxis,
-		final int yAxis, final int cAxis)
-	{
-		int i = 0;
-		for (int d = 0; d < randomAccess.numDimensions(); d++) {
-			if (d == xAxis) randomAccess.setPosition(x, xAxis);
-			else if (d == yAxis) randomAccess.setPosition(y, yAxis);
-			else if (d == cAxis) randomAccess.setPosition(c, cAxis);
-			else randomAccess.setPosition(otherCoordValues[i++], d);
+	/** Sets up the RandomAccess and buffers for the current dataset. */
+	private void initAccess() {
+		image = dataset.getImgPlus();
+		randomAccess = image.randomAccess();
+		xAxis = dataset.dimensionIndex(Axes.X);
+		yAxis = dataset.dimensionIndex(Axes.Y);
+		chanAxis = dataset.dimensionIndex(Axes.CHANNEL);
+		channelCount = chanAxis < 0 ? 1 : (int) dataset.dimension(chanAxis);
+		if (values.length != channelCount) values = new double[channelCount];
+		planePosition = new long[randomAccess.numDimensions()];
+		planeKnown = false;
+		if (neighborhood != null) neighborhood.reset();
+		findProfileAxis();
+	}
+
+	private void findProfileAxis() {
+		profileIndex =
+			profileAxis == null ? -1 : dataset.dimensionIndex(profileAxis);
+	}
+
+	/**
+	 * Reads count values along the given axis, starting at position 0, by
+	 * stepping forward. A negative axis reads the single current value.
+	 */
+	private void readLine(final int axis, final double[] dest, final int count) {
+		if (axis < 0) {
+			dest[0] = randomAccess.get().getRealDouble();
+			return;
+		}
+		randomAccess.setPosition(0, axis);
+		for (int i = 0; i < count; i++) {
+			if (i > 0) randomAccess.fwd(axis);
+			dest[i] = randomAccess.get().getRealDouble();
+		}
+	}
+
+	/**
+	 * Moves the RandomAccess to the given plane. Only the axes whose position
+	 * changed since the last event are set. The plane position holds a value
+	 * for every axis except X and Y; the channel position is set per channel
+	 * when the values are read.
+	 */
+	private void setPlanePosition(final Position planePos) {
+		int p = 0;
+		for (int d = 0; d < planePosition.length; d++) {
+			if (d == xAxis || d == yAxis) continue;
+			final long pos = planePos.getLongPosition(p++);
+			if (planeKnown && planePosition[d] == pos) continue;
+			planePosition[d] = pos;
+			if (d == chanAxis) planeChannel = pos;
+			else randomAccess.setPosition(pos, d);
+			if (neighborhood != null) neighborhood.reset();
 		}
+		planeKnown = true;
 	}
 
 }
@@ -0,0 +1,411 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2016 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.plugins.tools;
+
+import net.imagej.ChannelCollection;
+import net.imagej.Dataset;
+import net.imagej.axis.Axes;
+import net.imglib2.RandomAccess;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Reads and writes the channel values of the pixels of one UV plane of a
+ * {@link Dataset}. The axes other than U, V and channel stay at the position
+ * given at construction unless moved with {@link #setPlanePosition}. An
+ * accessor is not thread safe; use {@link #copy()} to get one for another
+ * thread.
+ * <p>
+ * Datasets backed by an ArrayImg or PlanarImg of a primitive pixel type are
+ * accessed directly through their arrays (see {@link DirectPlane}); others
+ * through a RandomAccess. Writes to cell backed datasets may be buffered to
+ * group them by cell; see {@link #setWriteCombining}.
+ * </p>
+ */
+public class PlaneAccessor {
+
+	// -- instance variables --
+
+	private final Dataset dataset;
+	private final int uAxis, vAxis, chanAxis;
+	private final long[] position;
+	private final int channelCount;
+	private final RandomAccess<? extends RealType<?>> accessor;
+	private final DirectPlane direct;
+	private final long[] dirtyMin, dirtyMax;
+	private DirtyRegion dirtyRegion;
+	private UndoJournal journal;
+	private CellWriteBuffer writeBuffer;
+	private int preferredChannel = -1;
+
+	// -- constructor --
+
+	public PlaneAccessor(final Dataset dataset, final int uAxis,
+		final int vAxis, final long[] position)
+	{
+		this.dataset = dataset;
+		this.uAxis = uAxis;
+		this.vAxis = vAxis;
+		this.position = position.clone();
+		chanAxis = dataset.dimensionIndex(Axes.CHANNEL);
+		channelCount = chanAxis < 0 ? 1 : (int) dataset.dimension(chanAxis);
+		accessor = dataset.getImgPlus().randomAccess();
+		accessor.setPosition(position);
+		direct = DirectPlane.create(dataset, uAxis, vAxis, chanAxis,
+			channelCount, position);
+		dirtyMin = new long[position.length];
+		dirtyMax = new long[position.length];
+	}
+
+	// -- public interface --
+
+	/**
+	 * Returns a new accessor of the same plane reporting to the same region and
+	 * journal.
+	 */
+	public PlaneAccessor copy() {
+		final PlaneAccessor copy =
+			new PlaneAccessor(dataset, uAxis, vAxis, position);
+		copy.setDirtyRegion(dirtyRegion);
+		copy.setJournal(journal);
+		copy.setPreferredChannel(preferredChannel);
+		return copy;
+	}
+
+	public Dataset getDataset() {
+		return dataset;
+	}
+
+	/**
+	 * Sets the region that is grown to cover every pixel this accessor writes.
+	 * May be null.
+	 */
+	public void setDirtyRegion(final DirtyRegion region) {
+		dirtyRegion = region;
+	}
+
+	/** Gets the region grown to cover every pixel this accessor writes. */
+	public DirtyRegion getDirtyRegion() {
+		return dirtyRegion;
+	}
+
+	/**
+	 * Sets the journal that records the original value of every pixel this
+	 * accessor writes, so the writes can be undone. May be null.
+	 */
+	public void setJournal(final UndoJournal journal) {
+		this.journal = journal;
+	}
+
+	/** Gets the journal recording the pixels this accessor writes. */
+	public UndoJournal getJournal() {
+		return journal;
+	}
+
+	/**
+	 * Turns buffering of writes on or off. While on, writes to a cell backed
+	 * dataset are queued and only applied, cell by cell, by {@link #flush()}, so
+	 * reads do not see them until then. Turning it off flushes the buffer.
+	 * Returns whether writes are buffered, which they never are for datasets
+	 * not backed by cells.
+	 */
+	public boolean setWriteCombining(final boolean combine) {
+		if (!combine) {
+			flush();
+			writeBuffer = null;
+		}
+		else if (writeBuffer == null) {
+			writeBuffer =
+				CellWriteBuffer.create(dataset, accessor, uAxis, vAxis, chanAxis);
+		}
+		return writeBuffer != null;
+	}
+
+	/** Gets the buffer queuing this accessor's writes, or null if none. */
+	public CellWriteBuffer getWriteBuffer() {
+		return writeBuffer;
+	}
+
+	/** Applies any buffered writes. */
+	public void flush() {
+		if (writeBuffer != null) writeBuffer.flush();
+	}
+
+	/**
+	 * Restricts writes to the given channel. A negative channel, the default,
+	 * writes all channels.
+	 */
+	public void setPreferredChannel(final long c) {
+		preferredChannel = c < 0 || c >= channelCount ? -1 : (int) c;
+	}
+
+	/** Gets the channel writes are restricted to, or -1 if none. */
+	public long getPreferredChannel() {
+		return preferredChannel;
+	}
+
+	/** Returns the index of the U axis. */
+	public int getUAxis() {
+		return uAxis;
+	}
+
+	/** Returns the index of the V axis. */
+	public int getVAxis() {
+		return vAxis;
+	}
+
+	/** Returns the index of the channel axis, or -1 if there is none. */
+	public int getChannelAxis() {
+		return chanAxis;
+	}
+
+	/** Returns the number of dimensions of the dataset. */
+	public int numDimensions() {
+		return position.length;
+	}
+
+	/**
+	 * Copies the position of this accessor's plane into pos. Only the axes
+	 * other than U, V and channel are meaningful.
+	 */
+	public void getPosition(final long[] pos) {
+		System.arraycopy(position, 0, pos, 0, position.length);
+	}
+
+	/** Returns the number of pixels along the U axis. */
+	public long getWidth() {
+		return dataset.dimension(uAxis);
+	}
+
+	/** Returns the number of pixels along the V axis. */
+	public long getHeight() {
+		return dataset.dimension(vAxis);
+	}
+
+	/** Returns the number of channels each pixel has. */
+	public int getChannelCount() {
+		return channelCount;
+	}
+
+	/**
+	 * Returns the values the pixels of this plane would hold after being
+	 * assigned the given channel values. Comparing against these rather than
+	 * the raw channel values is exact for integer pixel types.
+	 */
+	public double[] pixelValues(final ChannelCollection channels) {
+		final double[] values = new double[channelCount];
+		final RealType<?> scratch = dataset.getType().createVariable();
+		for (int c = 0; c < channelCount; c++) {
+			scratch.setReal(channels.getChannelValue(c));
+			values[c] = scratch.getRealDouble();
+		}
+		return values;
+	}
+
+	/**
+	 * Moves this accessor to another plane by setting the position of one of
+	 * the axes other than U, V and channel. Does nothing if the accessor is
+	 * already there.
+	 */
+	public void setPlanePosition(final long pos, final int axis) {
+		if (position[axis] == pos) return;
+		leavePlane();
+		position[axis] = pos;
+		accessor.setPosition(pos, axis);
+		if (direct != null) direct.setPlanePosition(position);
+	}
+
+	/**
+	 * Moves this accessor to the plane at the given position. Only the axes
+	 * other than U, V and channel are read, and the plane is looked up once
+	 * however many of them change. Does nothing if the accessor is already
+	 * there.
+	 */
+	public void setPlanePosition(final long[] pos) {
+		boolean moved = false;
+		for (int d = 0; d < position.length; d++) {
+			if (d == uAxis || d == vAxis || d == chanAxis) continue;
+			if (position[d] == pos[d]) continue;
+			if (!moved) leavePlane();
+			moved = true;
+			position[d] = pos[d];
+			accessor.setPosition(pos[d], d);
+		}
+		if (moved && direct != null) direct.setPlanePosition(position);
+	}
+
+	/** Returns the value of channel c of pixel (u,v). */
+	public double get(final long u, final long v, final int c) {
+		if (direct != null) return direct.get(u, v, c);
+		accessor.setPosition(u, uAxis);
+		accessor.setPosition(v, vAxis);
+		if (chanAxis >= 0) accessor.setPosition(c, chanAxis);
+		return accessor.get().getRealDouble();
+	}
+
+	/**
+	 * Reads channel c of the pixels from u0 to u1 on line v into values,
+	 * starting at the given offset.
+	 */
+	public void getRun(final long u0, final long u1, final long v, final int c,
+		final double[] values, final int offset)
+	{
+		if (direct != null) {
+			direct.getRun(u0, u1, v, c, values, offset);
+			return;
+		}
+		accessor.setPosition(u0, uAxis);
+		accessor.setPosition(v, vAxis);
+		if (chanAxis >= 0) accessor.setPosition(c, chanAxis);
+		final int end = offset + (int) (u1 - u0);
+		for (int i = offset; i <= end; i++) {
+			values[i] = accessor.get().getRealDouble();
+			accessor.fwd(uAxis);
+		}
+	}
+
+	/** Reads all channel values of pixel (u,v) into values. */
+	public void get(final long u, final long v, final double[] values) {
+		for (int c = 0; c < channelCount; c++)
+			values[c] = get(u, v, c);
+	}
+
+	/**
+	 * Returns true if every channel of pixel (u,v) lies within the inclusive
+	 * bounds given for that channel. NaN values never match.
+	 */
+	public boolean inRange(final long u, final long v, final double[] min,
+		final double[] max)
+	{
+		if (direct != null) return direct.inRange(u, v, min, max);
+		for (int c = 0; c < channelCount; c++) {
+			final double value = get(u, v, c);
+			if (!(value >= min[c] & value <= max[c])) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Sets all channels (or just the preferred one) of pixel (u,v) to the given
+	 * values.
+	 */
+	public void set(final long u, final long v, final double[] values) {
+		setRun(u, u, v, values);
+	}
+
+	/**
+	 * Sets all channels (or just the preferred one) of the pixels from u0 to u1
+	 * on line v.
+	 */
+	public void setRun(final long u0, final long u1, final long v,
+		final double[] values)
+	{
+		final int first = preferredChannel < 0 ? 0 : preferredChannel;
+		final int last = preferredChannel < 0 ? channelCount - 1 : preferredChannel;
+		if (journal != null) journal.record(this, u0, u1, v, first, last);
+		if (direct != null) {
+			for (int c = first; c <= last; c++)
+				direct.setRun(u0, u1, v, c, values[c]);
+			if (dirtyRegion != null) markDirty(u0, u1, v, first, last);
+			return;
+		}
+		if (writeBuffer != null) {
+			for (int c = first; c <= last; c++)
+				writeBuffer.add(u0, u1, v, c, values[c]);
+			if (dirtyRegion != null) markDirty(u0, u1, v, first, last);
+			return;
+		}
+		accessor.setPosition(v, vAxis);
+		for (int c = first; c <= last; c++) {
+			if (chanAxis >= 0) accessor.setPosition(c, chanAxis);
+			final double value = values[c];
+			for (long u = u0; u <= u1; u++) {
+				accessor.setPosition(u, uAxis);
+				accessor.get().setReal(value);
+			}
+		}
+		if (dirtyRegion != null) markDirty(u0, u1, v, first, last);
+	}
+
+	/**
+	 * Sets channel c of the pixels from u0 to u1 on line v to the values
+	 * starting at the given offset, such as values read by {@link #getRun}.
+	 * Buffered writes are applied first.
+	 */
+	public void setRun(final long u0, final long u1, final long v, final int c,
+		final double[] values, final int offset)
+	{
+		if (journal != null) journal.record(this, u0, u1, v, c, c);
+		if (direct != null) direct.setRun(u0, u1, v, c, values, offset);
+		else {
+			if (writeBuffer != null) writeBuffer.flush();
+			accessor.setPosition(u0, uAxis);
+			accessor.setPosition(v, vAxis);
+			if (chanAxis >= 0) accessor.setPosition(c, chanAxis);
+			final int end = offset + (int) (u1 - u0);
+			for (int i = offset; i <= end; i++) {
+				accessor.get().setReal(values[i]);
+				accessor.fwd(uAxis);
+			}
+		}
+		if (dirtyRegion != null) markDirty(u0, u1, v, c, c);
+	}
+
+	// -- helpers --
+
+	/** Writes what is buffered for the current plane before moving off it. */
+	private void leavePlane() {
+		if (writeBuffer == null) return;
+		writeBuffer.flush();
+		writeBuffer.planeChanged();
+	}
+
+	/**
+	 * Includes channels c0 to c1 of the run from u0 to u1 on line v in the
+	 * dirty region.
+	 */
+	private void markDirty(final long u0, final long u1, final long v,
+		final int c0, final int c1)
+	{
+		for (int d = 0; d < position.length; d++) {
+			dirtyMin[d] = dirtyMax[d] = position[d];
+		}
+		dirtyMin[uAxis] = u0;
+		dirtyMax[uAxis] = u1;
+		dirtyMin[vAxis] = dirtyMax[vAxis] = v;
+		if (chanAxis >= 0) {
+			dirtyMin[chanAxis] = c0;
+			dirtyMax[chanAxis] = c1;
+		}
+		dirtyRegion.include(dirtyMin, dirtyMax);
+	}
+
+}
@@ -0,0 +1,165 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2016 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.plugins.tools;
+
+import net.imagej.DrawingTool;
+import net.imagej.FloodFiller;
+
+import org.scijava.util.LongArray;
+
+/**
+ * Span based flood filler. Where {@link FloodFiller} visits the region one
+ * pixel at a time, this filler sweeps whole horizontal runs of matching pixels
+ * at once and pushes a single seed per run of the neighboring lines onto a
+ * primitive stack. Filled pixels are tracked in a {@link VisitedMask} so they
+ * are never read again.
+ */
+public class ScanlineFloodFiller extends AbstractFloodFiller {
+
+	// -- instance variables --
+
+	private final LongArray stack = new LongArray();
+
+	private PlaneAccessor access;
+	private VisitedMask visited;
+	private long maxU, maxV;
+	private double[] minValues, maxValues;
+	private double[] fillValues;
+
+	// -- constructor --
+
+	public ScanlineFloodFiller(final DrawingTool tool) {
+		super(tool);
+	}
+
+	// -- AbstractFloodFiller methods --
+
+	@Override
+	public void fill(final long u0, final long v0, final long[] position,
+		final int connectivity)
+	{
+		if (connectivity == 4) fill4(u0, v0, position);
+		else if (connectivity == 8) fill8(u0, v0, position);
+		else throw new IllegalArgumentException("Unsupported connectivity: " +
+			connectivity);
+	}
+
+	// -- public interface --
+
+	/**
+	 * Does a 4-connected flood fill of the plane at the given position starting
+	 * from the given (u,v) seed point.
+	 */
+	public void fill4(final long u0, final long v0, final long[] position) {
+		fillRegion(u0, v0, position, 0);
+	}
+
+	/**
+	 * Does an 8-connected flood fill of the plane at the given position starting
+	 * from the given (u,v) seed point.
+	 */
+	public void fill8(final long u0, final long v0, final long[] position) {
+		fillRegion(u0, v0, position, 1);
+	}
+
+	// -- private helpers --
+
+	private void fillRegion(final long u0, final long v0, final long[] position,
+		final long reach)
+	{
+		access = createAccessor(position);
+		maxU = access.getWidth() - 1;
+		maxV = access.getHeight() - 1;
+		if (u0 < 0 || u0 > maxU || v0 < 0 || v0 > maxV) return;
+		fillValues = access.pixelValues(getDrawingTool().getChannels());
+		final double[] seedValues = new double[access.getChannelCount()];
+		access.get(u0, v0, seedValues);
+		minValues = new double[seedValues.length];
+		maxValues = new double[seedValues.length];
+		getTolerance().bounds(seedValues, minValues, maxValues);
+		visited = VisitedMask.create(maxU + 1, maxV + 1);
+		stack.clear();
+		push(u0, v0);
+		while (stack.size() > 0 && !isCancelled()) {
+			final long v = pop();
+			final long u = pop();
+			if (!matches(u, v)) continue;
+			long left = u;
+			while (left > 0 && matches(left - 1, v))
+				left--;
+			long right = u;
+			while (right < maxU && matches(right + 1, v))
+				right++;
+			access.setRun(left, right, v, fillValues);
+			visited.setRun(left, right, v);
+			final long from = Math.max(left - reach, 0);
+			final long to = Math.min(right + reach, maxU);
+			if (v > 0) pushRuns(from, to, v - 1);
+			if (v < maxV) pushRuns(from, to, v + 1);
+		}
+		visited = null;
+		access = null;
+	}
+
+	/** Pushes the first pixel of each matching run within [from,to] on line v. */
+	private void pushRuns(final long from, final long to, final long v) {
+		boolean inRun = false;
+		for (long u = from; u <= to; u++) {
+			if (matches(u, v)) {
+				if (!inRun) push(u, v);
+				inRun = true;
+			}
+			else inRun = false;
+		}
+	}
+
+	/**
+	 * Returns true if (u,v) has not been visited and all its channels are within
+	 * tolerance of the seed values.
+	 */
+	private boolean matches(final long u, final long v) {
+		return !visited.isSet(u, v) && access.inRange(u, v, minValues, maxValues);
+	}
+
+	private void push(final long u, final long v) {
+		stack.addValue(u);
+		stack.addValue(v);
+	}
+
+	private long pop() {
+		final int last = stack.size() - 1;
+		final long value = stack.getValue(last);
+		stack.setSize(last);
+		return value;
+	}
+
+}
@@ -31,7 +31,7 @@
 
 package net.imagej.plugins.tools;
 
-import java.util.Random;
+import java.io.IOException;
 
 import net.imagej.ChannelCollection;
 import net.imagej.Dataset;
@@ -40,20 +40,23 @@ import net.imagej.axis.Axes;
 import net.imagej.display.ImageCanvas;
 import net.imagej.display.ImageDisplay;
 import net.imagej.display.ImageDisplayService;
-import net.imagej.event.DatasetUpdatedEvent;
 import net.imagej.options.OptionsChannels;
 import net.imagej.render.RenderingService;
 
 import org.scijava.command.CommandService;
+import org.scijava.display.event.input.KyPressedEvent;
 import org.scijava.display.event.input.MsButtonEvent;
 import org.scijava.display.event.input.MsDraggedEvent;
 import org.scijava.display.event.input.MsEvent;
 import org.scijava.display.event.input.MsPressedEvent;
 import org.scijava.display.event.input.MsReleasedEvent;
 import org.scijava.event.EventService;
+import org.scijava.input.KeyCode;
 import org.scijava.options.OptionsService;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
+import org.scijava.prefs.PrefService;
+import org.scijava.thread.ThreadService;
 import org.scijava.tool.AbstractTool;
 import org.scijava.tool.Tool;
 import org.scijava.util.IntCoords;
@@ -71,6 +74,23 @@ public class SprayCanTool extends AbstractTool {
 
 	public static final double PRIORITY = -303;
 
+	/** The bursts per second the flow rates were calibrated at. */
+	private static final int CALIBRATED_BURSTS_PER_SECOND = 20;
+
+	/** The bursts per second added by each step of the flow rate. */
+	private static final int BURSTS_PER_RATE_STEP = 5;
+
+	/** The bounds of the burst cadence derived from the flow rate. */
+	private static final int MIN_BURSTS_PER_SECOND = 10;
+	private static final int MAX_BURSTS_PER_SECOND = 50;
+
+	/** The bounds of the number of dots sprayed by one burst. */
+	private static final int MIN_DOTS_PER_BURST = 1;
+	private static final int MAX_DOTS_PER_BURST = 4096;
+
+	/** The shortest time between bursts, in nanoseconds. */
+	private static final long MIN_BURST_NANOS = 10000000L;
+
 	@Parameter
 	private CommandService commandService;
 
@@ -86,61 +106,175 @@ public class SprayCanTool extends AbstractTool {
 	@Parameter(required = false)
 	private EventService eventService;
 
+	@Parameter(required = false)
+	private ThreadService threadService;
+
+	@Parameter
+	private UndoService undoService;
+
+	@Parameter(required = false)
+	private PrefService prefService;
+
 	private DrawingTool drawingTool;
 	private int width=100, rate=6, dotSize=1;
-	private long numPixels = 1;
-	private Random rng = new Random();
-	
-	/** On mouse down the delay counters are reset. */
+	private long burstDots = 1, burstNanos = 50000000L;
+	private int frameRate = 30;
+	private SprayEngine engine;
+
+	/** Writes the sprayed dots; its values are those of the chosen channels. */
+	private PlaneAccessor access;
+	private double[] values;
+
+	/** Records the pixels the current spray overwrites. */
+	private UndoJournal sprayJournal;
+
+	/** Bounds of the pixels sprayed since the mouse went down. */
+	private DirtyRegion sprayRegion;
+	private long[] sprayPosition;
+
+	/** State of the current spray: where and how much has been sprayed. */
+	private ImageDisplay sprayDisplay;
+	private long targetX, targetY;
+	private long sprayStart, burstCount, lastFrameTime;
+	private boolean displayStale;
+	private Emitter emitter;
+
+	private boolean settingsLoaded;
+
+	/**
+	 * On mouse down a burst is sprayed and bursts are then sprayed at a cadence
+	 * that follows the flow rate until the mouse is released, even if the mouse
+	 * does not move. A right click while spraying cancels the spray.
+	 */
 	@Override
 	public void onMouseDown(final MsPressedEvent evt) {
+		if (drawingTool != null && evt.getButton() == MsButtonEvent.RIGHT_BUTTON) {
+			cancelSpray();
+			evt.consume();
+			return;
+		}
 		if (evt.getButton() != MsButtonEvent.LEFT_BUTTON) return;
 		if (!(evt.getDisplay() instanceof ImageDisplay)) return;
 		initDrawingTool(evt);
 		if (drawingTool != null) {
-			numPixels = calcPixelCount();
-			doOneSpray(evt);
+			calcCadence();
+			sprayDisplay = (ImageDisplay) evt.getDisplay();
+			sprayStart = System.nanoTime();
+			burstCount = 0;
+			lastFrameTime = 0;
+			setTarget(evt);
+			sprayDue();
+			if (threadService != null) {
+				emitter = new Emitter(burstNanos);
+				threadService.run(emitter);
+			}
 		}
 		evt.consume();
 	}
 
-	/** On mouse up all resources are freed. */
+	/**
+	 * On mouse up all resources are freed and an update of the sprayed region is
+	 * published.
+	 */
 	@Override
 	public void onMouseUp(final MsReleasedEvent evt) {
 		if (evt.getButton() != MsButtonEvent.LEFT_BUTTON) return;
 		if (drawingTool != null) {
+			if (emitter != null) emitter.stop();
+			flushSpray();
+			if (displayStale) sprayDisplay.update();
 			Dataset dataset = drawingTool.getDataset();
-			if (eventService != null) {
-				eventService.publish(new DatasetUpdatedEvent(dataset, false));
+			undoService.push(dataset, sprayJournal);
+			if (eventService != null && !sprayRegion.isEmpty()) {
+				eventService.publish(new DatasetRegionUpdatedEvent(dataset,
+					sprayRegion.getInterval()));
 			}
-			drawingTool = null;
+			clearSpray();
 		}
 		evt.consume();
 	}
 
-	/** On mouse drag sometimes a point is drawn. */
+	/** Cancels the spray in progress when Escape is pressed. */
+	@Override
+	public void onKeyDown(final KyPressedEvent evt) {
+		if (drawingTool == null || evt.getCode() != KeyCode.ESCAPE) return;
+		cancelSpray();
+		evt.consume();
+	}
+
+	/**
+	 * On mouse drag the spray moves to the new point, which gets any bursts that
+	 * are due.
+	 */
 	@Override
 	public void onMouseDrag(final MsDraggedEvent evt) {
 		if (drawingTool == null) return;
-		doOneSpray(evt);
+		setTarget(evt);
+		sprayDue();
 		evt.consume();
 	}
 
 	@Override
 	public void configure() {
+		loadSettings();
 		commandService.run(SprayCanToolConfig.class, true, "tool", this);
 	}
 
+	/** On activation the stored settings are loaded, the first time only. */
+	@Override
+	public void activate() {
+		loadSettings();
+	}
+
 	public void setWidth(int width) { this.width = width; }
 	public void setRate(int rate) { this.rate = rate; }
 	public void setDotSize(int dotSize) { this.dotSize = dotSize; }
 	public int getWidth() { return width; }
 	public int getRate() { return rate; }
 	public int getDotSize() { return dotSize; }
-	
+
+	/**
+	 * Sets the maximum number of times per second the display is updated while
+	 * spraying.
+	 */
+	public void setFrameRate(final int fps) {
+		if (fps < 1) frameRate = 1;
+		else frameRate = fps;
+	}
+
+	/**
+	 * Gets the maximum number of times per second the display is updated while
+	 * spraying.
+	 */
+	public int getFrameRate() {
+		return frameRate;
+	}
+
+	/**
+	 * Stores this tool's settings with the {@link PrefService} so that later
+	 * sessions start with them.
+	 */
+	public void saveSettings() {
+		final ToolSettings settings = new ToolSettings(prefService, getClass());
+		settings.put("width", width);
+		settings.put("rate", rate);
+		settings.put("dotSize", dotSize);
+		settings.put("frameRate", frameRate);
+	}
 
 	// -- private helpers --
 
+	/** Loads the stored settings of this tool if that has not been done yet. */
+	private void loadSettings() {
+		if (settingsLoaded) return;
+		settingsLoaded = true;
+		final ToolSettings settings = new ToolSettings(prefService, getClass());
+		setWidth(settings.getInt("width", width));
+		setRate(settings.getInt("rate", rate));
+		setDotSize(settings.getInt("dotSize", dotSize));
+		setFrameRate(settings.getInt("frameRate", frameRate));
+	}
+
 	private double calcFraction() {
 		// NB - formula arrived at by trying IJ1's version at each of the 10 rate
 		// settings and counting the pixels drawn in a radius 50 circle. Then used
@@ -156,30 +290,112 @@ public class SprayCanTool extends AbstractTool {
 		if (count <= 0) return 1;
 		return count;
 	}
+
+	/**
+	 * Works out how many dots a burst sprays and how often bursts are sprayed.
+	 * The flow rate sets the cadence, and the dots per burst then follow from
+	 * the flow. Where they fall outside their bounds, the dots are clamped and
+	 * the interval adjusted instead, so the flow stays the same.
+	 */
+	private void calcCadence() {
+		// NB - the pixel count is per burst at the calibrated cadence
+		final double flow = (double) calcPixelCount() *
+			CALIBRATED_BURSTS_PER_SECOND;
+		final int bursts = Math.max(MIN_BURSTS_PER_SECOND, Math.min(
+			MAX_BURSTS_PER_SECOND, rate * BURSTS_PER_RATE_STEP));
+		final double dots = Math.max(MIN_DOTS_PER_BURST, Math.min(
+			MAX_DOTS_PER_BURST, flow / bursts));
+		burstNanos = Math.max(MIN_BURST_NANOS, (long) (1e9 * dots / flow));
+		burstDots = Math.max(1, Math.round(flow * burstNanos / 1e9));
+	}
 	
-	private void doOneSpray(MsEvent evt) {
-		if (!(evt.getDisplay() instanceof ImageDisplay)) return;
-		ImageDisplay disp = (ImageDisplay) evt.getDisplay();
-		ImageCanvas canv = disp.getCanvas();
+	/**
+	 * Ends the spray in progress by restoring the pixels it sprayed from its
+	 * journal. The rest of the spray, up to the mouse release, is ignored.
+	 */
+	private void cancelSpray() {
+		if (emitter != null) emitter.stop();
+		flushSpray();
+		final Dataset dataset = drawingTool.getDataset();
+		try {
+			sprayJournal.restore(dataset);
+		}
+		catch (final IOException e) {
+			log().error("Cannot cancel spray", e);
+		}
+		sprayJournal.dispose();
+		sprayDisplay.update();
+		if (eventService != null && !sprayRegion.isEmpty()) {
+			eventService.publish(new DatasetRegionUpdatedEvent(dataset,
+				sprayRegion.getInterval()));
+		}
+		clearSpray();
+	}
+
+	/** Writes the buffered dots of the spray in progress. */
+	private void flushSpray() {
+		access.flush();
+		final CellWriteBuffer buffer = access.getWriteBuffer();
+		if (buffer != null) {
+			log().debug("Spray cell writes: " + buffer.getCellHits() + " hits, " +
+				buffer.getCellMisses() + " misses");
+		}
+	}
+
+	/** Frees the resources of the spray in progress. */
+	private void clearSpray() {
+		emitter = null;
+		displayStale = false;
+		sprayDisplay = null;
+		sprayJournal = null;
+		drawingTool = null;
+		access = null;
+		values = null;
+		sprayRegion = null;
+		sprayPosition = null;
+	}
+
+	/** Moves the spray to the data point under the mouse. */
+	private void setTarget(MsEvent evt) {
+		ImageCanvas canv = sprayDisplay.getCanvas();
 		IntCoords panelCoords = new IntCoords(evt.getX(), evt.getY());
 		RealCoords realCoords = canv.panelToDataCoords(panelCoords);
-		drawPixels(realCoords.getLongX(), realCoords.getLongY());
-		evt.getDisplay().update();
+		targetX = realCoords.getLongX();
+		targetY = realCoords.getLongY();
 	}
-	
-	// NB: adapted from IJ1's SprayCanTool.txt macro courtesy Wayne Rasband
-	private void drawPixels(long ox, long oy) {
-		double radius = width / 2.0;
-		double radius2 = radius * radius;
-		for (int i = 0; i < numPixels; i++) {
-			long dx, dy;
-			do {
-	      dx = (long) ((rng.nextDouble()-0.5)*width);
-	      dy = (long) ((rng.nextDouble()-0.5)*width);
-			} while (dx*dx + dy*dy > radius2);
-	    drawingTool.drawDot(ox + dx, oy + dy);
+
+	/**
+	 * Sprays the bursts that are due since the mouse went down as one burst at
+	 * the current point, and updates the display if a frame is due.
+	 */
+	private void sprayDue() {
+		if (drawingTool == null) return;
+		final long elapsed = System.nanoTime() - sprayStart;
+		final long due = 1 + elapsed / burstNanos;
+		if (due > burstCount) {
+			drawPixels(targetX, targetY, (due - burstCount) * burstDots);
+			burstCount = due;
+			displayStale = true;
+		}
+		final long now = System.currentTimeMillis();
+		if (displayStale && now - lastFrameTime >= 1000 / frameRate) {
+			access.flush();
+			sprayDisplay.update();
+			lastFrameTime = now;
+			displayStale = false;
 		}
 	}
+
+	// NB: adapted from IJ1's SprayCanTool.txt macro courtesy Wayne Rasband
+	private void drawPixels(long ox, long oy, long count) {
+		if (engine.spray(access, ox, oy, count, dotSize, values) == 0) return;
+		// NB - wide dots are drawn centered on their point
+		final long pad = dotSize > 1 ? (dotSize + 1) / 2 : 0;
+		sprayRegion.includePlaneBox(drawingTool.getDataset(), sprayPosition,
+			drawingTool.getUAxis(), drawingTool.getVAxis(), ox +
+				engine.getMinDu() - pad, oy + engine.getMinDv() - pad, ox +
+				engine.getMaxDu() + pad, oy + engine.getMaxDv() + pad, false);
+	}
 	
 	/** Allocates and initializes a DrawingTool if possible. */
 	private void initDrawingTool(final MsPressedEvent evt) {
@@ -211,6 +427,8 @@ public class SprayCanTool extends AbstractTool {
 		for (int i = 0; i < currPos.length; i++)
 			currPos[i] = imageDisplay.getLongPosition(i);
 		drawingTool.setPosition(currPos);
+		sprayPosition = currPos;
+		sprayRegion = new DirtyRegion(currPos.length);
 
 		// restrict to a single channel if a multichannel image
 		int chanIndex = imageDisplay.dimensionIndex(Axes.CHANNEL);
@@ -226,6 +444,62 @@ public class SprayCanTool extends AbstractTool {
 
 		// set the size used to draw dots
 		drawingTool.setLineWidth(getDotSize());
+
+		// the sprayed dots are written directly to the current plane
+		access = new PlaneAccessor(dataset, 0, 1, currPos);
+		sprayJournal = new UndoJournal();
+		access.setJournal(sprayJournal);
+		access.setWriteCombining(true);
+		if (chanIndex >= 0) access.setPreferredChannel(currPos[chanIndex]);
+		values = access.pixelValues(channels);
+		if (engine == null || engine.getWidth() != Math.max(width, 1)) {
+			engine = new SprayEngine(width);
+		}
+	}
+
+	/**
+	 * Wakes up at the burst cadence while the mouse is down and sprays the due
+	 * bursts on the dispatch thread, like the mouse events do. A wake up is
+	 * skipped while the previous one is still queued; its bursts are then
+	 * sprayed together by the next one.
+	 */
+	private class Emitter implements Runnable {
+
+		private final long intervalMillis;
+		private volatile boolean active = true;
+		private volatile boolean queued;
+
+		public Emitter(final long intervalNanos) {
+			intervalMillis = Math.max(1, intervalNanos / 1000000L);
+		}
+
+		public void stop() {
+			active = false;
+		}
+
+		@Override
+		public void run() {
+			final Runnable spray = new Runnable() {
+
+				@Override
+				public void run() {
+					queued = false;
+					if (emitter == Emitter.this) sprayDue();
+				}
+			};
+			while (active) {
+				try {
+					Thread.sleep(intervalMillis);
+				}
+				catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				if (!active || queued) continue;
+				queued = true;
+				threadService.queue(spray);
+			}
+		}
 	}
 
 }
@@ -47,10 +47,7 @@ public class SprayCanToolConfig implements Command {
 	@Parameter(type = ItemIO.BOTH)
 	private SprayCanTool tool;
 
-	// TODO - it would be nice to persist these values but the associated
-	// tools cannot persist values. thus you get in a situation that the
-	// these values do not equal the tool's initial values which is
-	// confusing. Tools need to be able to persist some values to get around this.
+	// NB - these values are saved by SprayCanTool.saveSettings() instead.
 
   @Parameter(label = "Spray Width (pixels):", min = "1", persist = false)
   private int width;
@@ -60,18 +57,25 @@ public class SprayCanToolConfig implements Command {
   
   @Parameter(label = "Flow Rate (1-10):", min = "1", max = "10", persist=false)
   private int rate;
-  
+
+	@Parameter(label = "Display Updates Per Second:", min = "1",
+		persist = false)
+	private int frameRate;
+
 	@Override
 	public void run() {
 		tool.setWidth(width);
 		tool.setRate(rate);
 		tool.setDotSize(dotSize);
+		tool.setFrameRate(frameRate);
+		tool.saveSettings();
 	}
 
 	protected void initAll() {
 		width = tool.getWidth();
 		rate = tool.getRate();
 		dotSize = tool.getDotSize();
+		frameRate = tool.getFrameRate();
 	}
 
 }
@@ -0,0 +1,212 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2016 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.plugins.tools;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Sprays bursts of randomly placed dots within a disk. The offsets of all the
+ * pixels of the disk are precomputed (and cached per width) in row-major
+ * order, so a dot is placed by drawing a single random index into that table
+ * rather than by rejection sampling. A burst marks its indices in a bitset,
+ * which drops duplicate dots, and then writes the dots in one pass in table
+ * order. An engine is not thread safe.
+ */
+public class SprayEngine {
+
+	// -- constants --
+
+	/** The number of offset tables kept in the cache. */
+	private static final int CACHE_SIZE = 8;
+
+	private static final Map<Integer, int[]> TABLES =
+		new LinkedHashMap<Integer, int[]>(CACHE_SIZE, 0.75f, true)
+		{
+
+			@Override
+			protected boolean removeEldestEntry(
+				final Map.Entry<Integer, int[]> eldest)
+			{
+				return size() > CACHE_SIZE;
+			}
+		};
+
+	// -- instance variables --
+
+	private final int width;
+
+	/** (du, dv) pairs of the pixels of the disk, in row-major order. */
+	private final int[] offsets;
+
+	/** Indices of the offsets chosen by the current burst. */
+	private final long[] chosen;
+
+	private final SplittableRandom random;
+
+	private int minDu, minDv, maxDu, maxDv;
+
+	// -- constructors --
+
+	/** Creates an engine spraying within a disk of the given width. */
+	public SprayEngine(final int width) {
+		this(width, new SplittableRandom());
+	}
+
+	/**
+	 * Creates an engine spraying within a disk of the given width whose dots
+	 * are placed by the given generator.
+	 */
+	public SprayEngine(final int width, final SplittableRandom random) {
+		this.width = Math.max(width, 1);
+		this.random = random;
+		offsets = table(this.width);
+		chosen = new long[(offsets.length / 2 + 63) / 64];
+	}
+
+	// -- public interface --
+
+	/** Gets the width of the disk (in pixels). */
+	public int getWidth() {
+		return width;
+	}
+
+	/** Gets the number of pixels of the disk. */
+	public int getDiskSize() {
+		return offsets.length / 2;
+	}
+
+	/**
+	 * Sprays count dots at random pixels of the disk centered on (u,v), setting
+	 * them to the given channel values. Dots wider than one pixel are drawn as
+	 * circles centered on their pixel. Pixels outside of the plane are ignored.
+	 * 
+	 * @return the number of distinct dots drawn
+	 */
+	public int spray(final PlaneAccessor access, final long u, final long v,
+		final long count, final int dotSize, final double[] values)
+	{
+		final int size = getDiskSize();
+		for (long i = 0; i < count; i++) {
+			final int index = random.nextInt(size);
+			chosen[index >>> 6] |= 1L << index;
+		}
+		final BrushStamp dot =
+			dotSize > 1 ? BrushStamp.get(BrushStamp.Shape.CIRCLE, dotSize) : null;
+		final long maxU = access.getWidth() - 1;
+		final long maxV = access.getHeight() - 1;
+		minDu = minDv = Integer.MAX_VALUE;
+		maxDu = maxDv = Integer.MIN_VALUE;
+		int drawn = 0;
+		for (int w = 0; w < chosen.length; w++) {
+			long word = chosen[w];
+			if (word == 0) continue;
+			chosen[w] = 0;
+			while (word != 0) {
+				final int index = (w << 6) + Long.numberOfTrailingZeros(word);
+				word &= word - 1;
+				final int du = offsets[2 * index];
+				final int dv = offsets[2 * index + 1];
+				if (dot != null) dot.stamp(access, u + du, v + dv, values);
+				else if (u + du >= 0 && u + du <= maxU && v + dv >= 0 &&
+					v + dv <= maxV)
+				{
+					access.set(u + du, v + dv, values);
+				}
+				if (du < minDu) minDu = du;
+				if (du > maxDu) maxDu = du;
+				if (dv < minDv) minDv = dv;
+				if (dv > maxDv) maxDv = dv;
+				drawn++;
+			}
+		}
+		return drawn;
+	}
+
+	/** Gets the smallest u offset of the dots of the last burst. */
+	public int getMinDu() {
+		return minDu;
+	}
+
+	/** Gets the largest u offset of the dots of the last burst. */
+	public int getMaxDu() {
+		return maxDu;
+	}
+
+	/** Gets the smallest v offset of the dots of the last burst. */
+	public int getMinDv() {
+		return minDv;
+	}
+
+	/** Gets the largest v offset of the dots of the last burst. */
+	public int getMaxDv() {
+		return maxDv;
+	}
+
+	// -- helpers --
+
+	/**
+	 * Returns the offsets of the pixels of the disk of the given width: those
+	 * within the radius of the center and strictly less than the radius away
+	 * along each axis.
+	 */
+	private static int[] table(final int width) {
+		synchronized (TABLES) {
+			int[] table = TABLES.get(width);
+			if (table == null) {
+				table = computeTable(width);
+				TABLES.put(width, table);
+			}
+			return table;
+		}
+	}
+
+	private static int[] computeTable(final int width) {
+		final double radius = width / 2.0;
+		final double radius2 = radius * radius;
+		final int reach = (int) Math.ceil(radius) - 1;
+		final int[] buffer = new int[2 * (2 * reach + 1) * (2 * reach + 1)];
+		int count = 0;
+		for (int dv = -reach; dv <= reach; dv++) {
+			for (int du = -reach; du <= reach; du++) {
+				if (du * du + dv * dv > radius2) continue;
+				buffer[count++] = du;
+				buffer[count++] = dv;
+			}
+		}
+		final int[] table = new int[count];
+		System.arraycopy(buffer, 0, table, 0, count);
+		return table;
+	}
+
+}
@@ -0,0 +1,123 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2016 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.plugins.tools;
+
+/**
+ * {@link VisitedMask} for huge planes. The plane is divided into square tiles
+ * and a tile's bitmap is only allocated once a pixel within it is marked, so
+ * memory use follows the size of the filled region rather than the plane.
+ */
+public class TiledVisitedMask extends VisitedMask {
+
+	// -- constants --
+
+	/** Tiles are (1 << TILE_SHIFT) pixels on a side. */
+	public static final int TILE_SHIFT = 8;
+
+	public static final int TILE_SIZE = 1 << TILE_SHIFT;
+
+	private static final int TILE_MASK = TILE_SIZE - 1;
+
+	private static final int TILE_WORDS = TILE_SIZE * TILE_SIZE / 64;
+
+	// -- instance variables --
+
+	private final long tilesAcross;
+	private final long[][] tiles;
+
+	// -- constructor --
+
+	public TiledVisitedMask(final long width, final long height) {
+		tilesAcross = (width + TILE_MASK) >>> TILE_SHIFT;
+		final long tilesDown = (height + TILE_MASK) >>> TILE_SHIFT;
+		final long tileCount = tilesAcross * tilesDown;
+		if (tileCount > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("Plane is too large for a tiled " +
+				"mask: " + width + " x " + height);
+		}
+		tiles = new long[(int) tileCount][];
+	}
+
+	// -- VisitedMask methods --
+
+	@Override
+	public boolean isSet(final long u, final long v) {
+		final long[] tile = tiles[tileIndex(u, v)];
+		if (tile == null) return false;
+		final int bit = bitIndex(u, v);
+		return (tile[bit >>> 6] & (1L << bit)) != 0;
+	}
+
+	@Override
+	public void set(final long u, final long v) {
+		final long[] tile = tile(tileIndex(u, v));
+		final int bit = bitIndex(u, v);
+		tile[bit >>> 6] |= 1L << bit;
+	}
+
+	@Override
+	public void setRun(final long u0, final long u1, final long v) {
+		long u = u0;
+		while (u <= u1) {
+			final long end = Math.min(u1, u | TILE_MASK);
+			final long[] tile = tile(tileIndex(u, v));
+			setBits(tile, bitIndex(u, v), bitIndex(end, v));
+			u = end + 1;
+		}
+	}
+
+	@Override
+	public void clear() {
+		for (int i = 0; i < tiles.length; i++)
+			tiles[i] = null;
+	}
+
+	// -- helpers --
+
+	private int tileIndex(final long u, final long v) {
+		return (int) ((v >>> TILE_SHIFT) * tilesAcross + (u >>> TILE_SHIFT));
+	}
+
+	private int bitIndex(final long u, final long v) {
+		return (((int) v & TILE_MASK) << TILE_SHIFT) | ((int) u & TILE_MASK);
+	}
+
+	private long[] tile(final int index) {
+		long[] tile = tiles[index];
+		if (tile == null) {
+			tile = new long[TILE_WORDS];
+			tiles[index] = tile;
+		}
+		return tile;
+	}
+
+}
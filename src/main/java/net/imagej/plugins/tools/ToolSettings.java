@@ -0,0 +1,112 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2016 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.plugins.tools;
+
+import org.scijava.prefs.PrefService;
+
+/**
+ * Reads and writes the settings of one tool through the {@link PrefService},
+ * so a tool can start each session with the values it was last configured
+ * with. Settings are stored under the tool's class. Without a
+ * {@link PrefService} nothing is stored and every setting reads as its
+ * default.
+ */
+public final class ToolSettings {
+
+	private final PrefService prefService;
+	private final Class<?> tool;
+
+	// -- constructor --
+
+	/**
+	 * Creates an accessor for the settings of the given tool.
+	 * 
+	 * @param prefService the service storing the settings, or null
+	 * @param tool the class the settings are stored under
+	 */
+	public ToolSettings(final PrefService prefService, final Class<?> tool) {
+		this.prefService = prefService;
+		this.tool = tool;
+	}
+
+	// -- public interface --
+
+	/** Gets the given setting, or the default if unset. */
+	public String getString(final String key, final String def) {
+		if (prefService == null) return def;
+		return prefService.get(tool, key, def);
+	}
+
+	/** Gets the given integer setting, or the default if unset. */
+	public long getLong(final String key, final long def) {
+		if (prefService == null) return def;
+		return prefService.getLong(tool, key, def);
+	}
+
+	/** Gets the given integer setting, or the default if unset. */
+	public int getInt(final String key, final int def) {
+		if (prefService == null) return def;
+		return prefService.getInt(tool, key, def);
+	}
+
+	/** Gets the given real setting, or the default if unset. */
+	public double getDouble(final String key, final double def) {
+		if (prefService == null) return def;
+		return prefService.getDouble(tool, key, def);
+	}
+
+	/** Gets the given boolean setting, or the default if unset. */
+	public boolean getBoolean(final String key, final boolean def) {
+		if (prefService == null) return def;
+		return prefService.getBoolean(tool, key, def);
+	}
+
+	/** Gets the given enum setting, or the default if unset or unknown. */
+	public <E extends Enum<E>> E getEnum(final String key, final E def) {
+		if (prefService == null) return def;
+		final String value = prefService.get(tool, key, null);
+		if (value == null) return def;
+		try {
+			return Enum.valueOf(def.getDeclaringClass(), value);
+		}
+		catch (final IllegalArgumentException e) {
+			return def;
+		}
+	}
+
+	/** Stores the given setting as a string. */
+	public void put(final String key, final Object value) {
+		if (prefService == null) return;
+		prefService.put(tool, key, String.valueOf(value));
+	}
+
+}
@@ -0,0 +1,619 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2016 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.plugins.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.imagej.Dataset;
+import net.imglib2.Interval;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.ByteType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.type.numeric.integer.ShortType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedIntType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+
+/**
+ * Records the original values of the pixels an edit overwrites, so that the
+ * edit can be undone (or a stroke cancelled) without a copy of the whole
+ * image. The values are kept per channel in tiles of 64 x 64 pixels of a
+ * plane, which are only allocated where the edit went, so the memory used
+ * grows with the size of the edit rather than with the size of the image.
+ * Values are stored as the primitive type of the pixels, so a tile of 8-bit
+ * pixels takes 4 KB.
+ * <p>
+ * Tiles are copied on write: the first time a {@link PlaneAccessor} given a
+ * journal writes into a tile, the whole tile is read a line at a time; later
+ * writes into it only flag the written pixels. Restoring writes back the
+ * flagged pixels only, a run of them at a time.
+ * </p>
+ * <p>
+ * Whenever the values held in memory exceed the spill threshold, while
+ * recording or when the edit is {@link #finish() finished}, they are appended
+ * to a temporary file, which is memory mapped again when the edit is
+ * {@link #restore restored}. Only the flags of written pixels, 512 bytes per
+ * tile, stay in memory.
+ * </p>
+ * <p>
+ * A journal may be written by several accessors (and threads) at once. Each
+ * tile is locked on its own, so threads writing different tiles do not wait
+ * for each other.
+ * </p>
+ */
+public class UndoJournal {
+
+	// -- constants --
+
+	private static final int TILE_SHIFT = 6;
+	private static final int TILE_SIZE = 1 << TILE_SHIFT;
+	private static final int TILE_MASK = TILE_SIZE - 1;
+	private static final int TILE_PIXELS = TILE_SIZE * TILE_SIZE;
+
+	/** Bytes of memory taken by the flags of a tile. */
+	private static final long FLAG_BYTES = TILE_PIXELS / 8;
+
+	/** The most bytes of spilled tiles mapped at once while restoring. */
+	private static final int MAP_CHUNK = 1024 * TILE_PIXELS * 8;
+
+	/** Spill threshold of new journals. */
+	private static final long DEFAULT_SPILL_THRESHOLD = 64L * 1024 * 1024;
+
+	// -- instance variables --
+
+	private final ConcurrentMap<TileKey, Tile> tiles =
+		new ConcurrentHashMap<TileKey, Tile>();
+
+	/** Tiles whose snapshot is taken, in the order they were taken. */
+	private final List<Tile> tileList = new ArrayList<Tile>();
+
+	/** Buffers of each recording thread. */
+	private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+
+		@Override
+		protected Scratch initialValue() {
+			return new Scratch();
+		}
+	};
+
+	private volatile Storage storage;
+
+	/** The dimensions and pixel type of the edited dataset. */
+	private long[] dims;
+	private Class<?> typeClass;
+
+	private long spillThreshold = DEFAULT_SPILL_THRESHOLD;
+	private volatile boolean finished;
+
+	/** Bytes of tile values held in memory. */
+	private volatile long heldBytes;
+
+	private File spillFile;
+	private RandomAccessFile spillOutput;
+	private long spillLength;
+	private boolean spillFailed;
+
+	// -- public interface --
+
+	/**
+	 * Sets how many bytes of values a journal may hold in memory before it
+	 * moves them to a temporary file. A negative threshold never spills.
+	 */
+	public synchronized void setSpillThreshold(final long bytes) {
+		spillThreshold = bytes;
+	}
+
+	/** Gets how many bytes of values a journal may hold before it spills. */
+	public synchronized long getSpillThreshold() {
+		return spillThreshold;
+	}
+
+	/** Returns true if no pixel has been recorded. */
+	public synchronized boolean isEmpty() {
+		return tileList.isEmpty();
+	}
+
+	/** Returns the number of pixel channel values recorded. */
+	public synchronized long getValueCount() {
+		long count = 0;
+		for (final Tile tile : tileList) {
+			synchronized (tile) {
+				for (final long word : tile.recorded)
+					count += Long.bitCount(word);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the number of bytes of memory the recorded values and the flags
+	 * of the written pixels take.
+	 */
+	public synchronized long getMemorySize() {
+		return heldBytes + tileList.size() * FLAG_BYTES;
+	}
+
+	/**
+	 * Returns true if the given dataset has the dimensions and pixel type the
+	 * edited dataset had when the edit was recorded, so that the edit can be
+	 * restored to it.
+	 */
+	public synchronized boolean matches(final Dataset dataset) {
+		if (storage == null) return true;
+		if (dataset.numDimensions() != dims.length) return false;
+		for (int d = 0; d < dims.length; d++) {
+			if (dataset.dimension(d) != dims[d]) return false;
+		}
+		return dataset.getType().getClass() == typeClass;
+	}
+
+	/**
+	 * Records the current values of channels c0 to c1 of the pixels from u0 to
+	 * u1 on line v of the accessor's plane, where they have not been recorded
+	 * yet. Called by the accessor before it writes them; the pixels must lie
+	 * within the plane.
+	 */
+	public void record(final PlaneAccessor access, final long u0,
+		final long u1, final long v, final int c0, final int c1)
+	{
+		if (finished) throw new IllegalStateException("Journal is finished");
+		if (storage == null) initStorage(access);
+		final Scratch buffers = scratch.get();
+		final long[] position = buffers.position(access.numDimensions());
+		final int uAxis = access.getUAxis();
+		final int vAxis = access.getVAxis();
+		final int chanAxis = access.getChannelAxis();
+		access.getPosition(position);
+		position[vAxis] = v & ~TILE_MASK;
+		final int row = (int) (v & TILE_MASK);
+		for (int c = c0; c <= c1; c++) {
+			if (chanAxis >= 0) position[chanAxis] = c;
+			for (long tu = u0 & ~TILE_MASK; tu <= u1; tu += TILE_SIZE) {
+				position[uAxis] = tu;
+				final Tile tile = tile(access, buffers, c, uAxis, vAxis);
+				final int start = (int) (Math.max(u0, tu) - tu);
+				final int end = (int) (Math.min(u1, tu + TILE_MASK) - tu);
+				// NB - a line of a tile is one word of its flags
+				synchronized (tile) {
+					tile.recorded[row] |=
+						(-1L >>> (TILE_MASK - end)) & (-1L << start);
+				}
+			}
+		}
+		if (overThreshold()) {
+			synchronized (this) {
+				if (overThreshold()) spill();
+			}
+		}
+	}
+
+	/**
+	 * Ends the recording. A journal holding more values than its spill
+	 * threshold moves them to its temporary file; if that fails they stay in
+	 * memory.
+	 */
+	public synchronized void finish() {
+		if (finished) return;
+		finished = true;
+		if (overThreshold()) spill();
+		closeSpillOutput();
+	}
+
+	/**
+	 * Writes the recorded values back to the given dataset, undoing the edit.
+	 * 
+	 * @return the bounds of the restored pixels, or null if there were none
+	 * @throws IOException if spilled values cannot be read back
+	 * @throws IllegalArgumentException if the dataset does not
+	 *           {@link #matches match} the edited one
+	 */
+	public synchronized Interval restore(final Dataset dataset)
+		throws IOException
+	{
+		if (tileList.isEmpty()) return null;
+		if (!matches(dataset)) {
+			throw new IllegalArgumentException(
+				"Dataset has changed structure since the edit");
+		}
+		final DirtyRegion region = new DirtyRegion(dataset.numDimensions());
+		final double[] line = new double[TILE_SIZE];
+		PlaneAccessor access = null;
+		closeSpillOutput();
+		final RandomAccessFile file =
+			spillFile == null ? null : new RandomAccessFile(spillFile, "r");
+		try {
+			// NB - spilled tiles lie in the file in list order
+			MappedByteBuffer chunk = null;
+			long chunkStart = 0;
+			for (final Tile tile : tileList) {
+				access = accessor(access, dataset, tile.key);
+				if (tile.values != null) {
+					restore(tile, tile.values, 0, access, line, region);
+					continue;
+				}
+				if (chunk == null || tile.offset + storage.tileBytes() > chunkStart +
+					chunk.capacity())
+				{
+					chunkStart = tile.offset;
+					final long size = Math.min(MAP_CHUNK, spillLength - chunkStart);
+					chunk = file.getChannel().map(FileChannel.MapMode.READ_ONLY,
+						chunkStart, size);
+				}
+				restore(tile, chunk, (int) (tile.offset - chunkStart), access, line,
+					region);
+			}
+		}
+		finally {
+			if (file != null) file.close();
+		}
+		return region.getInterval();
+	}
+
+	/** Frees the recorded values, including any temporary file. */
+	public synchronized void dispose() {
+		tiles.clear();
+		tileList.clear();
+		heldBytes = 0;
+		closeSpillOutput();
+		discardSpillFile();
+	}
+
+	// -- helpers --
+
+	/**
+	 * Notes the structure of the accessor's dataset, and picks how values are
+	 * stored from the type of its pixels.
+	 */
+	private synchronized void initStorage(final PlaneAccessor access) {
+		if (storage != null) return;
+		final Dataset dataset = access.getDataset();
+		dims = new long[dataset.numDimensions()];
+		dataset.dimensions(dims);
+		typeClass = dataset.getType().getClass();
+		storage = Storage.of(dataset.getType());
+	}
+
+	/**
+	 * Gets the tile at the position of the given buffers, taking a snapshot of
+	 * channel c of it if it is new. A tile being snapshot by another thread is
+	 * returned at once; its lock is held until the snapshot is taken.
+	 */
+	private Tile tile(final PlaneAccessor access, final Scratch buffers,
+		final int c, final int uAxis, final int vAxis)
+	{
+		final long[] position = buffers.position;
+		buffers.probe.set(position, uAxis, vAxis);
+		final Tile tile = tiles.get(buffers.probe);
+		if (tile != null) return tile;
+		final TileKey key = new TileKey();
+		key.set(position.clone(), uAxis, vAxis);
+		final Storage s = storage;
+		final Tile fresh = new Tile(key, ByteBuffer.allocate(s.tileBytes()));
+		synchronized (fresh) {
+			final Tile other = tiles.putIfAbsent(key, fresh);
+			if (other != null) return other;
+			final long tu = position[uAxis], tv = position[vAxis];
+			final long u0 = Math.max(tu, 0);
+			final long u1 = Math.min(tu + TILE_MASK, access.getWidth() - 1);
+			final long v1 = Math.min(tv + TILE_MASK, access.getHeight() - 1);
+			final double[] line = buffers.line;
+			for (long v = Math.max(tv, 0); v <= v1 && u0 <= u1; v++) {
+				access.getRun(u0, u1, v, c, line, 0);
+				final int offset = (int) (v - tv) << TILE_SHIFT | (int) (u0 - tu);
+				for (int i = 0; i <= u1 - u0; i++)
+					s.put(fresh.values, offset + i, line[i]);
+			}
+		}
+		synchronized (this) {
+			tileList.add(fresh);
+			heldBytes += s.tileBytes();
+		}
+		return fresh;
+	}
+
+	/**
+	 * Returns an accessor of the plane of the given tile, which is the given
+	 * accessor moved there if it has the tile's axes.
+	 */
+	private PlaneAccessor accessor(final PlaneAccessor access,
+		final Dataset dataset, final TileKey key)
+	{
+		if (access != null && access.getUAxis() == key.uAxis &&
+			access.getVAxis() == key.vAxis)
+		{
+			access.setPlanePosition(key.position);
+			return access;
+		}
+		return new PlaneAccessor(dataset, key.uAxis, key.vAxis, key.position);
+	}
+
+	/**
+	 * Writes the recorded values of a tile, read from values starting at the
+	 * given byte. Each run of flagged pixels of a line is written at once.
+	 */
+	private void restore(final Tile tile, final ByteBuffer values,
+		final int base, final PlaneAccessor access, final double[] line,
+		final DirtyRegion region)
+	{
+		final TileKey key = tile.key;
+		final long u0 = key.position[key.uAxis], v0 = key.position[key.vAxis];
+		final int chanAxis = access.getChannelAxis();
+		final int c = chanAxis < 0 ? 0 : (int) key.position[chanAxis];
+		int minDu = TILE_SIZE, minDv = TILE_SIZE, maxDu = -1, maxDv = -1;
+		for (int dv = 0; dv < TILE_SIZE; dv++) {
+			long word = tile.recorded[dv];
+			while (word != 0) {
+				// NB - the run covers the set bits from start up to stop
+				final int start = Long.numberOfTrailingZeros(word);
+				final int stop = Long.numberOfTrailingZeros(~word & -1L << start);
+				final int offset = dv << TILE_SHIFT;
+				for (int du = start; du < stop; du++)
+					line[du] = storage.get(values, base, offset + du);
+				access.setRun(u0 + start, u0 + stop - 1, v0 + dv, c, line, start);
+				if (start < minDu) minDu = start;
+				if (stop - 1 > maxDu) maxDu = stop - 1;
+				if (dv < minDv) minDv = dv;
+				maxDv = dv;
+				word = stop == TILE_SIZE ? 0 : word & -1L << stop;
+			}
+		}
+		if (maxDu < 0) return;
+		final long[] lo = key.position.clone(), hi = lo.clone();
+		lo[key.uAxis] = u0 + minDu;
+		hi[key.uAxis] = u0 + maxDu;
+		lo[key.vAxis] = v0 + minDv;
+		hi[key.vAxis] = v0 + maxDv;
+		region.include(lo, hi);
+	}
+
+	/** Returns true if more values are held in memory than should be. */
+	private boolean overThreshold() {
+		return spillThreshold >= 0 && heldBytes > spillThreshold && !spillFailed;
+	}
+
+	/**
+	 * Appends the values of the tiles held in memory to the temporary file, in
+	 * list order. If that fails the values stay in memory and spilling is not
+	 * tried again.
+	 */
+	private void spill() {
+		try {
+			if (spillOutput == null) {
+				if (spillFile == null) {
+					spillFile = File.createTempFile("undo-journal", ".bin");
+					spillFile.deleteOnExit();
+				}
+				spillOutput = new RandomAccessFile(spillFile, "rw");
+			}
+			final FileChannel channel = spillOutput.getChannel();
+			for (final Tile tile : tileList) {
+				if (tile.values == null) continue;
+				final ByteBuffer buffer = tile.values.duplicate();
+				buffer.clear();
+				long offset = spillLength;
+				while (buffer.hasRemaining())
+					offset += channel.write(buffer, offset);
+				tile.offset = spillLength;
+				spillLength = offset;
+			}
+		}
+		catch (final IOException e) {
+			spillFailed = true;
+			return;
+		}
+		for (final Tile tile : tileList)
+			tile.values = null;
+		heldBytes = 0;
+	}
+
+	private void closeSpillOutput() {
+		if (spillOutput == null) return;
+		try {
+			spillOutput.close();
+		}
+		catch (final IOException e) {
+			// NB - the data written is read back from the file by name
+		}
+		spillOutput = null;
+	}
+
+	private void discardSpillFile() {
+		if (spillFile == null) return;
+		if (!spillFile.delete()) spillFile.deleteOnExit();
+		spillFile = null;
+	}
+
+	// -- helper classes --
+
+	/** Buffers reused by the records of one thread. */
+	private static final class Scratch {
+
+		private final TileKey probe = new TileKey();
+		private final double[] line = new double[TILE_SIZE];
+		private long[] position;
+
+		private long[] position(final int numDimensions) {
+			if (position == null || position.length != numDimensions) {
+				position = new long[numDimensions];
+			}
+			return position;
+		}
+	}
+
+	/** Position of the first pixel of a tile, plus its plane's axes. */
+	private static final class TileKey {
+
+		private long[] position;
+		private int uAxis, vAxis;
+		private int hash;
+
+		private void set(final long[] pos, final int u, final int v) {
+			position = pos;
+			uAxis = u;
+			vAxis = v;
+			hash = 31 * (31 * Arrays.hashCode(pos) + u) + v;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (!(o instanceof TileKey)) return false;
+			final TileKey other = (TileKey) o;
+			return hash == other.hash && uAxis == other.uAxis &&
+				vAxis == other.vAxis && Arrays.equals(position, other.position);
+		}
+	}
+
+	/**
+	 * The original values of one channel of a tile, and flags telling which of
+	 * its pixels have been written since.
+	 */
+	private static final class Tile {
+
+		private final TileKey key;
+		private final long[] recorded = new long[TILE_SIZE];
+
+		/** The values, or null once they are spilled. */
+		private ByteBuffer values;
+
+		/** Where the values are in the temporary file once spilled. */
+		private long offset;
+
+		private Tile(final TileKey key, final ByteBuffer values) {
+			this.key = key;
+			this.values = values;
+		}
+	}
+
+	/** How the values of one type of pixel are stored. */
+	private enum Storage {
+		BYTE(1), UNSIGNED_BYTE(1), SHORT(2), UNSIGNED_SHORT(2), INT(4),
+		UNSIGNED_INT(4), FLOAT(4), LONG(8), DOUBLE(8);
+
+		private final int bytes;
+
+		private Storage(final int bytes) {
+			this.bytes = bytes;
+		}
+
+		/** Returns the storage holding values of the given type exactly. */
+		private static Storage of(final RealType<?> type) {
+			final Class<?> c = type.getClass();
+			if (c == ByteType.class) return BYTE;
+			if (c == UnsignedByteType.class) return UNSIGNED_BYTE;
+			if (c == ShortType.class) return SHORT;
+			if (c == UnsignedShortType.class) return UNSIGNED_SHORT;
+			if (c == IntType.class) return INT;
+			if (c == UnsignedIntType.class) return UNSIGNED_INT;
+			if (c == FloatType.class) return FLOAT;
+			if (c == LongType.class) return LONG;
+			return DOUBLE;
+		}
+
+		/** Returns the number of bytes the values of a tile take. */
+		private int tileBytes() {
+			return TILE_PIXELS * bytes;
+		}
+
+		/** Stores value as the index-th value of a tile held in b. */
+		private void put(final ByteBuffer b, final int index, final double value) {
+			final int i = index * bytes;
+			switch (this) {
+				case BYTE:
+				case UNSIGNED_BYTE:
+					b.put(i, (byte) (long) value);
+					break;
+				case SHORT:
+				case UNSIGNED_SHORT:
+					b.putShort(i, (short) (long) value);
+					break;
+				case INT:
+				case UNSIGNED_INT:
+					b.putInt(i, (int) (long) value);
+					break;
+				case FLOAT:
+					b.putFloat(i, (float) value);
+					break;
+				case LONG:
+					b.putLong(i, (long) value);
+					break;
+				default:
+					b.putDouble(i, value);
+			}
+		}
+
+		/**
+		 * Returns the index-th value of the tile held in b starting at the given
+		 * byte.
+		 */
+		private double get(final ByteBuffer b, final int base, final int index) {
+			final int i = base + index * bytes;
+			switch (this) {
+				case BYTE:
+					return b.get(i);
+				case UNSIGNED_BYTE:
+					return b.get(i) & 0xff;
+				case SHORT:
+					return b.getShort(i);
+				case UNSIGNED_SHORT:
+					return b.getShort(i) & 0xffff;
+				case INT:
+					return b.getInt(i);
+				case UNSIGNED_INT:
+					return b.getInt(i) & 0xffffffffL;
+				case FLOAT:
+					return b.getFloat(i);
+				case LONG:
+					return b.getLong(i);
+				default:
+					return b.getDouble(i);
+			}
+		}
+	}
+
+}
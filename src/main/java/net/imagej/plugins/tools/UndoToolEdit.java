@@ -0,0 +1,89 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2016 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.plugins.tools;
+
+import java.io.IOException;
+
+import net.imagej.Dataset;
+import net.imglib2.Interval;
+
+import org.scijava.command.Command;
+import org.scijava.event.EventService;
+import org.scijava.log.LogService;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+
+/**
+ * Undoes the latest edit made to a {@link Dataset} by the drawing and fill
+ * tools, from its history kept by the {@link UndoService}. Nothing is undone
+ * if the dataset's structure or type has changed since the edit.
+ */
+@Plugin(type = Command.class, menuPath = "Edit>Undo Tool Edit")
+public class UndoToolEdit implements Command {
+
+	@Parameter
+	private Dataset dataset;
+
+	@Parameter
+	private UndoService undoService;
+
+	@Parameter(required = false)
+	private EventService eventService;
+
+	@Parameter(required = false)
+	private LogService log;
+
+	@Override
+	public void run() {
+		final UndoJournal journal = undoService.pop(dataset);
+		if (journal == null) return;
+		if (!journal.matches(dataset)) {
+			journal.dispose();
+			undoService.clear(dataset);
+			if (log != null) log.warn("Cannot undo tool edit: image has changed");
+			return;
+		}
+		try {
+			final Interval region = journal.restore(dataset);
+			if (region != null && eventService != null) {
+				eventService.publish(new DatasetRegionUpdatedEvent(dataset, region));
+			}
+		}
+		catch (final IOException e) {
+			if (log != null) log.error("Cannot undo tool edit", e);
+		}
+		finally {
+			journal.dispose();
+		}
+	}
+
+}
@@ -0,0 +1,92 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2016 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.plugins.tools;
+
+/**
+ * Records which pixels of a UV plane have already been visited by a fill. Fill
+ * engines consult the mask before reading pixel values so that pixels which
+ * were already filled are never read again, and so that a fill terminates even
+ * when the fill values equal the values being replaced.
+ */
+public abstract class VisitedMask {
+
+	// -- constants --
+
+	/** Largest plane (in pixels) that gets a single dense bitmap. */
+	public static final long DENSE_LIMIT = 1L << 28;
+
+	// -- public interface --
+
+	/**
+	 * Returns a mask sized to the given plane. Small planes get one dense bitmap
+	 * and huge planes get a tiled mask whose tiles are allocated on first use.
+	 */
+	public static VisitedMask create(final long width, final long height) {
+		if (width * height <= DENSE_LIMIT) {
+			return new DenseVisitedMask(width, height);
+		}
+		return new TiledVisitedMask(width, height);
+	}
+
+	/** Returns true if pixel (u,v) has been marked. */
+	public abstract boolean isSet(long u, long v);
+
+	/** Marks pixel (u,v). */
+	public abstract void set(long u, long v);
+
+	/** Marks all pixels from u0 to u1 (inclusive) on line v. */
+	public abstract void setRun(long u0, long u1, long v);
+
+	/** Unmarks all pixels. */
+	public abstract void clear();
+
+	// -- helpers --
+
+	/** Sets the bits from index first to index last (inclusive) of words. */
+	protected static void setBits(final long[] words, final long first,
+		final long last)
+	{
+		final int w0 = (int) (first >>> 6);
+		final int w1 = (int) (last >>> 6);
+		final long head = -1L << first;
+		final long tail = -1L >>> (63 - (last & 63));
+		if (w0 == w1) {
+			words[w0] |= head & tail;
+			return;
+		}
+		words[w0] |= head;
+		for (int w = w0 + 1; w < w1; w++)
+			words[w] = -1L;
+		words[w1] |= tail;
+	}
+
+}
@@ -0,0 +1,274 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2016 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.plugins.tools;
+
+import net.imagej.Dataset;
+import net.imagej.DrawingTool;
+import net.imagej.axis.Axes;
+
+import org.scijava.util.LongArray;
+
+/**
+ * Span based flood filler that fills a connected region through the Z axis
+ * (and optionally the TIME axis) of a {@link Dataset} rather than a single UV
+ * plane. Every line along U of the volume is given a row number, made from its
+ * V, Z and TIME coordinates, and the filler sweeps runs along U exactly as the
+ * {@link ScanlineFloodFiller} does, pushing one seed per run of the
+ * neighboring rows onto a primitive stack. Visited pixels are tracked in a
+ * {@link VisitedMask} with one line per row, so huge volumes get the chunked
+ * tiled mask.
+ * <p>
+ * Connectivity is 6, 18 or 26 as usual for 3D: two pixels are neighbors if
+ * they differ by at most one in each coordinate and differ in at most 1, 2 or
+ * 3 coordinates respectively. When TIME is included the same rule is applied
+ * over four coordinates.
+ * </p>
+ */
+public class VolumeFloodFiller extends AbstractFloodFiller {
+
+	// -- instance variables --
+
+	private final LongArray stack = new LongArray();
+
+	private boolean includeTime;
+
+	private PlaneAccessor access;
+	private VisitedMask visited;
+	private int zAxis, tAxis;
+	private long maxU, height, depth, rowCount;
+
+	/** The plane the accessor is on, and a position for moving it. */
+	private long currentPlane;
+	private long[] planePosition;
+	private double[] minValues, maxValues;
+	private double[] fillValues;
+
+	/** Neighbor row offsets as (dv, dz, dt, reach) quadruples. */
+	private long[] neighbors;
+
+	// -- constructor --
+
+	public VolumeFloodFiller(final DrawingTool tool) {
+		super(tool);
+	}
+
+	// -- AbstractFloodFiller methods --
+
+	@Override
+	public void fill(final long u0, final long v0, final long[] position,
+		final int connectivity)
+	{
+		if (connectivity == 6) fill6(u0, v0, position);
+		else if (connectivity == 18) fill18(u0, v0, position);
+		else if (connectivity == 26) fill26(u0, v0, position);
+		else throw new IllegalArgumentException("Unsupported connectivity: " +
+			connectivity);
+	}
+
+	// -- public interface --
+
+	/** Specify whether the fill also spreads along the TIME axis. */
+	public void setIncludeTime(final boolean includeTime) {
+		this.includeTime = includeTime;
+	}
+
+	/** Returns true if the fill also spreads along the TIME axis. */
+	public boolean isTimeIncluded() {
+		return includeTime;
+	}
+
+	/**
+	 * Does a 6-connected flood fill of the volume starting from the given (u,v)
+	 * seed point in the plane at the given position.
+	 */
+	public void fill6(final long u0, final long v0, final long[] position) {
+		fillRegion(u0, v0, position, 1);
+	}
+
+	/**
+	 * Does an 18-connected flood fill of the volume starting from the given
+	 * (u,v) seed point in the plane at the given position.
+	 */
+	public void fill18(final long u0, final long v0, final long[] position) {
+		fillRegion(u0, v0, position, 2);
+	}
+
+	/**
+	 * Does a 26-connected flood fill of the volume starting from the given
+	 * (u,v) seed point in the plane at the given position.
+	 */
+	public void fill26(final long u0, final long v0, final long[] position) {
+		fillRegion(u0, v0, position, 3);
+	}
+
+	// -- private helpers --
+
+	private void fillRegion(final long u0, final long v0, final long[] position,
+		final int maxDiff)
+	{
+		final Dataset ds = getDrawingTool().getDataset();
+		access = createAccessor(position);
+		zAxis = ds.dimensionIndex(Axes.Z);
+		tAxis = includeTime ? ds.dimensionIndex(Axes.TIME) : -1;
+		maxU = access.getWidth() - 1;
+		height = access.getHeight();
+		depth = zAxis < 0 ? 1 : ds.dimension(zAxis);
+		final long frames = tAxis < 0 ? 1 : ds.dimension(tAxis);
+		rowCount = height * depth * frames;
+		if (u0 < 0 || u0 > maxU || v0 < 0 || v0 >= height) return;
+		final long z0 = zAxis < 0 ? 0 : position[zAxis];
+		final long t0 = tAxis < 0 ? 0 : position[tAxis];
+		final long row0 = v0 + height * (z0 + depth * t0);
+		planePosition = position.clone();
+		currentPlane = z0 + depth * t0;
+
+		fillValues = access.pixelValues(getDrawingTool().getChannels());
+		final double[] seedValues = new double[access.getChannelCount()];
+		moveToRow(row0);
+		access.get(u0, v0, seedValues);
+		minValues = new double[seedValues.length];
+		maxValues = new double[seedValues.length];
+		getTolerance().bounds(seedValues, minValues, maxValues);
+		neighbors = neighborOffsets(maxDiff);
+		visited = VisitedMask.create(maxU + 1, rowCount);
+		stack.clear();
+		push(u0, row0);
+		while (stack.size() > 0 && !isCancelled()) {
+			final long row = pop();
+			final long u = pop();
+			final long v = moveToRow(row);
+			if (!matches(u, v, row)) continue;
+			long left = u;
+			while (left > 0 && matches(left - 1, v, row))
+				left--;
+			long right = u;
+			while (right < maxU && matches(right + 1, v, row))
+				right++;
+			access.setRun(left, right, v, fillValues);
+			visited.setRun(left, right, row);
+			pushNeighbors(left, right, row);
+		}
+		visited = null;
+		access = null;
+		planePosition = null;
+	}
+
+	/**
+	 * Computes the neighbor row offsets for the given maximum number of
+	 * differing coordinates. A neighbor row may be reached diagonally along U
+	 * only if that leaves room for one more differing coordinate.
+	 */
+	private long[] neighborOffsets(final int maxDiff) {
+		final LongArray offsets = new LongArray();
+		final int tRange = tAxis < 0 ? 0 : 1;
+		for (int dt = -tRange; dt <= tRange; dt++) {
+			for (int dz = -1; dz <= 1; dz++) {
+				for (int dv = -1; dv <= 1; dv++) {
+					final int diff = Math.abs(dv) + Math.abs(dz) + Math.abs(dt);
+					if (diff == 0 || diff > maxDiff) continue;
+					offsets.addValue(dv);
+					offsets.addValue(dz);
+					offsets.addValue(dt);
+					offsets.addValue(diff < maxDiff ? 1 : 0);
+				}
+			}
+		}
+		return offsets.copyArray();
+	}
+
+	/** Scans the rows neighboring a filled run for runs to fill. */
+	private void pushNeighbors(final long left, final long right,
+		final long row)
+	{
+		final long v = row % height;
+		final long z = row / height % depth;
+		final long t = row / height / depth;
+		for (int i = 0; i < neighbors.length; i += 4) {
+			final long nv = v + neighbors[i];
+			final long nz = z + neighbors[i + 1];
+			final long nt = t + neighbors[i + 2];
+			if (nv < 0 || nv >= height || nz < 0 || nz >= depth || nt < 0) continue;
+			final long nRow = nv + height * (nz + depth * nt);
+			if (nRow >= rowCount) continue;
+			final long reach = neighbors[i + 3];
+			pushRuns(Math.max(left - reach, 0), Math.min(right + reach, maxU), nRow);
+		}
+	}
+
+	/** Pushes the first pixel of each matching run within [from,to] of row. */
+	private void pushRuns(final long from, final long to, final long row) {
+		final long v = moveToRow(row);
+		boolean inRun = false;
+		for (long u = from; u <= to; u++) {
+			if (matches(u, v, row)) {
+				if (!inRun) push(u, row);
+				inRun = true;
+			}
+			else inRun = false;
+		}
+	}
+
+	/** Positions the accessor on the plane of the given row; returns its v. */
+	private long moveToRow(final long row) {
+		final long plane = row / height;
+		if (plane != currentPlane) {
+			if (zAxis >= 0) planePosition[zAxis] = plane % depth;
+			if (tAxis >= 0) planePosition[tAxis] = plane / depth;
+			access.setPlanePosition(planePosition);
+			currentPlane = plane;
+		}
+		return row % height;
+	}
+
+	/**
+	 * Returns true if (u,row) has not been visited and all its channels are
+	 * within tolerance of the seed values. The accessor must already be on the
+	 * plane of the row.
+	 */
+	private boolean matches(final long u, final long v, final long row) {
+		return !visited.isSet(u, row) &&
+			access.inRange(u, v, minValues, maxValues);
+	}
+
+	private void push(final long u, final long row) {
+		stack.addValue(u);
+		stack.addValue(row);
+	}
+
+	private long pop() {
+		final int last = stack.size() - 1;
+		final long value = stack.getValue(last);
+		stack.setSize(last);
+		return value;
+	}
+
+}
@@ -31,22 +31,150 @@
 
 package net.imagej.plugins.tools;
 
+import java.util.Collections;
+
+import net.imagej.Dataset;
+import net.imagej.display.ImageDisplay;
+import net.imagej.display.OverlayService;
+import net.imagej.overlay.PolygonOverlay;
+import net.imglib2.RealPoint;
+import net.imglib2.roi.PolygonRegionOfInterest;
+
+import org.scijava.command.CommandService;
+import org.scijava.display.event.input.MsButtonEvent;
+import org.scijava.display.event.input.MsClickedEvent;
+import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
 import org.scijava.tool.AbstractTool;
 import org.scijava.tool.Tool;
 
 /**
- * TODO
+ * Tool implementation for the wand. Clicking a pixel outlines the region of
+ * similar pixels connected to it with a polygon overlay. The outline is traced
+ * by a {@link ContourTracer}, which only visits the boundary of the region.
  * 
  * @author Curtis Rueden
  */
 @Plugin(type = Tool.class, name = "Wand", description = "Wand (tracing) tool",
-	iconPath = "/icons/tools/wand.png", priority = WandTool.PRIORITY,
-	enabled = false)
+	iconPath = "/icons/tools/wand.png", priority = WandTool.PRIORITY)
 public class WandTool extends AbstractTool {
 
 	public static final double PRIORITY = -110;
 
-	// TODO
+	enum Connectivity {
+		EIGHT, FOUR
+	}
+
+	// -- instance variables --
+
+	@Parameter
+	private CommandService commandService;
+
+	@Parameter
+	private OverlayService overlayService;
+
+	private Connectivity connectivity = Connectivity.EIGHT;
+	private double tolerance = 0;
+	private FloodFillTool.ToleranceMode toleranceMode =
+		FloodFillTool.ToleranceMode.ABSOLUTE;
+
+	// -- public interface --
+
+	/** Specify whether traced regions should be 4 or 8 connected. */
+	public void setConnectivity(final Connectivity c) {
+		connectivity = c;
+	}
+
+	/** Gets the connectivity of traced regions. */
+	public Connectivity getConnectivity() {
+		return connectivity;
+	}
+
+	/**
+	 * Sets how far the channel values of a pixel may differ from those of the
+	 * clicked pixel for the pixel to still be part of the traced region.
+	 */
+	public void setTolerance(final double t) {
+		if (t < 0) tolerance = 0;
+		else tolerance = t;
+	}
+
+	/** Gets the wand's current tolerance. */
+	public double getTolerance() {
+		return tolerance;
+	}
+
+	/**
+	 * Specify whether the tolerance is an absolute amount or a percentage of the
+	 * clicked pixel's channel values.
+	 */
+	public void setToleranceMode(final FloodFillTool.ToleranceMode mode) {
+		toleranceMode = mode;
+	}
+
+	/** Gets the wand's current tolerance mode. */
+	public FloodFillTool.ToleranceMode getToleranceMode() {
+		return toleranceMode;
+	}
+
+	/** Implements the configuration of this tool. */
+	@Override
+	public void configure() {
+		commandService.run(WandToolConfig.class, true, "tool", this);
+	}
+
+	/** Outlines the clicked region when mouse clicked */
+	@Override
+	public void onMouseClick(final MsClickedEvent evt) {
+		if (evt.getButton() != MsButtonEvent.LEFT_BUTTON) return;
+		final ImageDisplay imageDisplay = (ImageDisplay) evt.getDisplay();
+		if (imageDisplay != null) {
+			final PixelRecorder recorder = new PixelRecorder(getContext(), false);
+			if (recorder.record(evt)) {
+				final PolygonOverlay overlay =
+					trace(recorder.getDataset(), getCurrPosition(imageDisplay),
+						recorder.getCX(), recorder.getCY());
+				if (overlay != null) {
+					overlayService.addOverlays(imageDisplay, Collections
+						.singletonList(overlay));
+					imageDisplay.update();
+				}
+			}
+			recorder.releaseDataset();
+		}
+		evt.consume();
+	}
+
+	// -- private helpers --
+
+	/**
+	 * Returns an overlay outlining the region around (u,v) in the plane of the
+	 * dataset at the given position, or null if there is none.
+	 */
+	private PolygonOverlay trace(final Dataset ds, final long[] position,
+		final long u, final long v)
+	{
+		// TODO - change here to support arbitrary UV axes
+		final PlaneAccessor access = new PlaneAccessor(ds, 0, 1, position);
+		final ContourTracer tracer = new ContourTracer(access);
+		tracer.setEightConnected(connectivity == Connectivity.EIGHT);
+		tracer.setTolerance(new FillTolerance(tolerance,
+			toleranceMode == FloodFillTool.ToleranceMode.PERCENT));
+		if (!tracer.trace(u, v)) return null;
+		final PolygonRegionOfInterest roi = new PolygonRegionOfInterest();
+		for (int i = 0; i < tracer.getVertexCount(); i++) {
+			roi.addVertex(i, new RealPoint(tracer.getVertexU(i), tracer
+				.getVertexV(i)));
+		}
+		return new PolygonOverlay(getContext(), roi);
+	}
+
+	/** Returns the current position shown in the associated ImageDisplay. */
+	private long[] getCurrPosition(final ImageDisplay imageDisplay) {
+		final long[] currPos = new long[imageDisplay.numDimensions()];
+		for (int i = 0; i < currPos.length; i++)
+			currPos[i] = imageDisplay.getLongPosition(i);
+		return currPos;
+	}
 
 }
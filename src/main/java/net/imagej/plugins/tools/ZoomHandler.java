@@ -50,7 +50,7 @@ import org.scijava.tool.Tool;
  * @author Curtis Rueden
  */
 @Plugin(type = Tool.class, name = "Zoom Shortcuts")
-public class ZoomHandler extends AbstractTool {
+public class ZoomHandler extends AbstractTool implements KeyHandler {
 
 	@Parameter
 	private ZoomService zoomService;
@@ -66,7 +66,17 @@ public class ZoomHandler extends AbstractTool {
 	}
 
 	@Override
-	public void onKeyDown(final KyPressedEvent evt) {
+	public KeyCode[] getKeyCodes() {
+		return new KeyCode[] { KeyCode.EQUALS };
+	}
+
+	@Override
+	public char[] getKeyCharacters() {
+		return new char[] { '=' };
+	}
+
+	@Override
+	public void handleKey(final KyPressedEvent evt) {
 		final Display<?> display = evt.getDisplay();
 		if (!(display instanceof ImageDisplay)) return;
 
@@ -0,0 +1,214 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2016 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.plugins.tools;
+
+import static org.junit.Assert.fail;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.imagej.ChannelCollection;
+import net.imagej.DatasetService;
+import net.imagej.DrawingTool;
+import net.imagej.ImgPlus;
+import net.imagej.axis.AxisType;
+import net.imagej.render.RenderingService;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgFactory;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.scijava.Context;
+
+/**
+ * Shared fixture of the flood filler tests: a context for the drawing tools,
+ * one image factory per storage layout and a breadth first reference fill.
+ */
+public abstract class AbstractFloodFillerTest {
+
+	/** Value the drawing tools of {@link #tool} fill with. */
+	protected static final int FILL_VALUE = 200;
+
+	private Context context;
+	private DatasetService datasetService;
+	private RenderingService renderingService;
+
+	@Before
+	public void setUp() {
+		context = new Context(DatasetService.class, RenderingService.class);
+		datasetService = context.service(DatasetService.class);
+		renderingService = context.service(RenderingService.class);
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	// -- Internal methods --
+
+	/** Gets array, planar and cell image factories. */
+	protected static List<ImgFactory<UnsignedByteType>> factories(
+		final int cellSize)
+	{
+		final UnsignedByteType type = new UnsignedByteType();
+		return Arrays.<ImgFactory<UnsignedByteType>> asList(
+			new ArrayImgFactory<UnsignedByteType>(type),
+			new PlanarImgFactory<UnsignedByteType>(type),
+			new CellImgFactory<UnsignedByteType>(type, cellSize));
+	}
+
+	/** Creates a drawing tool that fills the image with {@link #FILL_VALUE}. */
+	protected DrawingTool tool(final Img<UnsignedByteType> img,
+		final AxisType... axes)
+	{
+		final DrawingTool tool = new DrawingTool(datasetService.create(
+			new ImgPlus<UnsignedByteType>(img, "test", axes)), renderingService);
+		tool.setChannels(new ChannelCollection(Collections
+			.singletonList((double) FILL_VALUE)));
+		return tool;
+	}
+
+	/**
+	 * Finds the pixels connected to the seed, one pixel at a time. Neighbors
+	 * differ by at most one in each of the first {@code spanned} dimensions and
+	 * by at most {@code maxSteps} in all of them together.
+	 *
+	 * @return the connected pixels, indexed with X varying fastest
+	 */
+	protected static boolean[] reference(final Img<UnsignedByteType> img,
+		final long[] seed, final int spanned, final int maxSteps)
+	{
+		final int[] dims = new int[img.numDimensions()];
+		int size = 1;
+		for (int d = 0; d < dims.length; d++) {
+			dims[d] = (int) img.dimension(d);
+			size *= dims[d];
+		}
+		final List<int[]> offsets = offsets(dims.length, spanned, maxSteps);
+		final boolean[] filled = new boolean[size];
+		final RandomAccess<UnsignedByteType> access = img.randomAccess();
+		access.setPosition(seed);
+		final int seedValue = access.get().get();
+		final int[] p = new int[dims.length], q = new int[dims.length];
+		for (int d = 0; d < dims.length; d++)
+			p[d] = (int) seed[d];
+		final ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+		queue.add(index(p, dims));
+		filled[index(p, dims)] = true;
+		while (!queue.isEmpty()) {
+			unindex(queue.poll(), dims, p);
+			for (final int[] offset : offsets) {
+				boolean inside = true;
+				for (int d = 0; d < dims.length; d++) {
+					q[d] = p[d] + offset[d];
+					inside &= q[d] >= 0 && q[d] < dims[d];
+				}
+				if (!inside || filled[index(q, dims)]) continue;
+				access.setPosition(q);
+				if (access.get().get() != seedValue) continue;
+				filled[index(q, dims)] = true;
+				queue.add(index(q, dims));
+			}
+		}
+		return filled;
+	}
+
+	/**
+	 * Checks that the filled image matches the original, with the expected
+	 * pixels set to {@link #FILL_VALUE}.
+	 */
+	protected static void assertFilled(final String message,
+		final Img<UnsignedByteType> original, final Img<UnsignedByteType> filled,
+		final boolean[] expected)
+	{
+		final int[] dims = new int[original.numDimensions()];
+		for (int d = 0; d < dims.length; d++)
+			dims[d] = (int) original.dimension(d);
+		final RandomAccess<UnsignedByteType> before = original.randomAccess();
+		final RandomAccess<UnsignedByteType> after = filled.randomAccess();
+		final int[] p = new int[dims.length];
+		for (int i = 0; i < expected.length; i++) {
+			unindex(i, dims, p);
+			before.setPosition(p);
+			after.setPosition(p);
+			final int value = expected[i] ? FILL_VALUE : before.get().get();
+			if (after.get().get() != value) {
+				fail(message + " differs at " + Arrays.toString(p));
+			}
+		}
+	}
+
+	// -- Helper methods --
+
+	private static List<int[]> offsets(final int numDims, final int spanned,
+		final int maxSteps)
+	{
+		final List<int[]> offsets = new ArrayList<int[]>();
+		int count = 1;
+		for (int d = 0; d < spanned; d++)
+			count *= 3;
+		for (int i = 0; i < count; i++) {
+			final int[] offset = new int[numDims];
+			int steps = 0;
+			for (int d = 0, digits = i; d < spanned; d++, digits /= 3) {
+				offset[d] = digits % 3 - 1;
+				steps += Math.abs(offset[d]);
+			}
+			if (steps > 0 && steps <= maxSteps) offsets.add(offset);
+		}
+		return offsets;
+	}
+
+	private static int index(final int[] p, final int[] dims) {
+		int index = 0;
+		for (int d = dims.length - 1; d >= 0; d--)
+			index = index * dims[d] + p[d];
+		return index;
+	}
+
+	private static void unindex(int index, final int[] dims, final int[] p) {
+		for (int d = 0; d < dims.length; d++) {
+			p[d] = index % dims[d];
+			index /= dims[d];
+		}
+	}
+
+}
@@ -0,0 +1,188 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2016 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.plugins.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import net.imagej.DatasetService;
+import net.imagej.ImgPlus;
+import net.imagej.axis.Axes;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+
+/**
+ * Tests {@link BrushStamp}.
+ */
+public class BrushStampTest {
+
+	private static final int WIDTH = 64, HEIGHT = 48;
+	private static final double[] VALUES = { 1 };
+
+	private Context context;
+	private DatasetService datasetService;
+
+	@Before
+	public void setUp() {
+		context = new Context(DatasetService.class);
+		datasetService = context.service(DatasetService.class);
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Test
+	public void testGetIsCached() {
+		assertSame(BrushStamp.get(BrushStamp.Shape.CIRCLE, 9), BrushStamp.get(
+			BrushStamp.Shape.CIRCLE, 9));
+	}
+
+	@Test
+	public void testSquare() {
+		final Img<UnsignedByteType> img = ArrayImgs.unsignedBytes(WIDTH, HEIGHT);
+		BrushStamp.get(BrushStamp.Shape.SQUARE, 4).stamp(accessor(img), 10, 10,
+			VALUES);
+		final Cursor<UnsignedByteType> cursor = img.localizingCursor();
+		while (cursor.hasNext()) {
+			final int value = cursor.next().get();
+			final long u = cursor.getLongPosition(0);
+			final long v = cursor.getLongPosition(1);
+			// NB - the center of an even width lies left of and above the middle
+			final boolean inside = u >= 9 && u <= 12 && v >= 9 && v <= 12;
+			assertEquals(u + "," + v, inside ? 1 : 0, value);
+		}
+	}
+
+	@Test
+	public void testStampIsClipped() {
+		final Img<UnsignedByteType> img = ArrayImgs.unsignedBytes(WIDTH, HEIGHT);
+		BrushStamp.get(BrushStamp.Shape.SQUARE, 5).stamp(accessor(img), -1,
+			HEIGHT, VALUES);
+		int count = 0;
+		for (final UnsignedByteType t : img)
+			count += t.get();
+		// NB - only the 2 x 2 pixels in the lower left corner are in the plane
+		assertEquals(4, count);
+	}
+
+	/**
+	 * Checks that the runs a stroke adds at each step draw the same pixels as
+	 * a whole stamp at every point of the line.
+	 */
+	@Test
+	public void testStampLine() {
+		final Random r = new Random(4);
+		for (final BrushStamp.Shape shape : BrushStamp.Shape.values()) {
+			for (final int width : new int[] { 1, 2, 3, 6, 9, 16 }) {
+				final BrushStamp stamp = BrushStamp.get(shape, width);
+				for (int i = 0; i < 20; i++) {
+					final long u0 = r.nextInt(WIDTH + 20) - 10;
+					final long v0 = r.nextInt(HEIGHT + 20) - 10;
+					final long u1 = r.nextInt(WIDTH + 20) - 10;
+					final long v1 = r.nextInt(HEIGHT + 20) - 10;
+					final Img<UnsignedByteType> line =
+						ArrayImgs.unsignedBytes(WIDTH, HEIGHT);
+					final PlaneAccessor lineAccess = accessor(line);
+					stamp.stamp(lineAccess, u0, v0, VALUES);
+					stamp.stampLine(lineAccess, u0, v0, u1, v1, VALUES);
+					final Img<UnsignedByteType> stamps =
+						ArrayImgs.unsignedBytes(WIDTH, HEIGHT);
+					stampBresenham(stamp, accessor(stamps), u0, v0, u1, v1);
+					assertSameValues(shape + " " + width, stamps, line);
+				}
+			}
+		}
+	}
+
+	// -- Helper methods --
+
+	private PlaneAccessor accessor(final Img<UnsignedByteType> img) {
+		return new PlaneAccessor(datasetService.create(
+			new ImgPlus<UnsignedByteType>(img, "test", Axes.X, Axes.Y)), 0, 1,
+			new long[2]);
+	}
+
+	/** Stamps at every point of the Bresenham line from (u0,v0) to (u1,v1). */
+	private static void stampBresenham(final BrushStamp stamp,
+		final PlaneAccessor access, final long u0, final long v0, final long u1,
+		final long v1)
+	{
+		final long du = Math.abs(u1 - u0);
+		final long dv = -Math.abs(v1 - v0);
+		final int su = u0 < u1 ? 1 : -1;
+		final int sv = v0 < v1 ? 1 : -1;
+		long err = du + dv;
+		long u = u0, v = v0;
+		stamp.stamp(access, u, v, VALUES);
+		while (u != u1 || v != v1) {
+			final long e2 = 2 * err;
+			if (e2 >= dv) {
+				err += dv;
+				u += su;
+			}
+			if (e2 <= du) {
+				err += du;
+				v += sv;
+			}
+			stamp.stamp(access, u, v, VALUES);
+		}
+	}
+
+	private static void assertSameValues(final String message,
+		final Img<UnsignedByteType> expected, final Img<UnsignedByteType> actual)
+	{
+		final Cursor<UnsignedByteType> cursor = expected.localizingCursor();
+		final RandomAccess<UnsignedByteType> access = actual.randomAccess();
+		while (cursor.hasNext()) {
+			final int value = cursor.next().get();
+			access.setPosition(cursor);
+			if (access.get().get() != value) {
+				fail(message + " differs at " + cursor.getLongPosition(0) + "," +
+					cursor.getLongPosition(1));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,201 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2016 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.plugins.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import net.imagej.Dataset;
+import net.imagej.DatasetService;
+import net.imagej.ImgPlus;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+
+/**
+ * Tests {@link CellWriteBuffer}.
+ */
+public class CellWriteBufferTest {
+
+	private static final int WIDTH = 100, HEIGHT = 80, CHANNELS = 3;
+	private static final int CELL_SIZE = 16;
+
+	private Context context;
+	private DatasetService datasetService;
+
+	@Before
+	public void setUp() {
+		context = new Context(DatasetService.class);
+		datasetService = context.service(DatasetService.class);
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Test
+	public void testCreate() {
+		final Dataset cells = create(cellImg(WIDTH, HEIGHT), Axes.X, Axes.Y);
+		assertNotNull(CellWriteBuffer.create(cells, cells.getImgPlus()
+			.randomAccess(), 0, 1, -1));
+		final Dataset array =
+			create(ArrayImgs.unsignedShorts(WIDTH, HEIGHT), Axes.X, Axes.Y);
+		assertNull(CellWriteBuffer.create(array, array.getImgPlus()
+			.randomAccess(), 0, 1, -1));
+	}
+
+	@Test
+	public void testLastWriteWins() {
+		final Img<UnsignedShortType> img = cellImg(WIDTH, HEIGHT);
+		final Dataset dataset = create(img, Axes.X, Axes.Y);
+		final CellWriteBuffer buffer = CellWriteBuffer.create(dataset, dataset
+			.getImgPlus().randomAccess(), 0, 1, -1);
+		buffer.add(0, 99, 5, 0, 1);
+		buffer.add(10, 50, 5, 0, 2);
+		buffer.add(40, 60, 5, 0, 3);
+		// NB - runs are split at cell borders
+		assertEquals(7 + 4 + 2, buffer.size());
+		assertEquals(0, value(img, 45, 5));
+		buffer.flush();
+		assertEquals(0, buffer.size());
+		for (int u = 0; u < WIDTH; u++) {
+			final int expected = u < 10 || u > 60 ? 1 : u < 40 ? 2 : 3;
+			assertEquals("u = " + u, expected, value(img, u, 5));
+		}
+	}
+
+	@Test
+	public void testRunsAreGroupedByCell() {
+		final Dataset dataset = create(cellImg(WIDTH, HEIGHT), Axes.X, Axes.Y);
+		final CellWriteBuffer buffer = CellWriteBuffer.create(dataset, dataset
+			.getImgPlus().randomAccess(), 0, 1, -1);
+		// alternate between the first two cells of line 0
+		for (int i = 0; i < 10; i++) {
+			buffer.add(i, i, 0, 0, i);
+			buffer.add(CELL_SIZE + i, CELL_SIZE + i, 0, 0, i);
+		}
+		buffer.flush();
+		assertEquals(2, buffer.getCellMisses());
+		assertEquals(18, buffer.getCellHits());
+	}
+
+	@Test
+	public void testClear() {
+		final Img<UnsignedShortType> img = cellImg(WIDTH, HEIGHT);
+		final Dataset dataset = create(img, Axes.X, Axes.Y);
+		final CellWriteBuffer buffer = CellWriteBuffer.create(dataset, dataset
+			.getImgPlus().randomAccess(), 0, 1, -1);
+		buffer.add(0, 99, 0, 0, 9);
+		buffer.clear();
+		buffer.flush();
+		assertEquals(0, value(img, 0, 0));
+	}
+
+	/**
+	 * Checks that buffered writes, including more runs than the buffer holds,
+	 * leave the same values as writing each run straight away.
+	 */
+	@Test
+	public void testMatchesDirectWrites() {
+		final Img<UnsignedShortType> img = cellImg(WIDTH, HEIGHT, CHANNELS);
+		final Dataset dataset = create(img, Axes.X, Axes.Y, Axes.CHANNEL);
+		final CellWriteBuffer buffer = CellWriteBuffer.create(dataset, dataset
+			.getImgPlus().randomAccess(), 0, 1, 2);
+		final Img<UnsignedShortType> expected =
+			ArrayImgs.unsignedShorts(WIDTH, HEIGHT, CHANNELS);
+		final RandomAccess<UnsignedShortType> access = expected.randomAccess();
+		final Random r = new Random(2);
+		for (int i = 0; i < 100000; i++) {
+			final long u0 = r.nextInt(WIDTH);
+			final long u1 = Math.min(WIDTH - 1, u0 + r.nextInt(40));
+			final long v = r.nextInt(HEIGHT);
+			final int c = r.nextInt(CHANNELS);
+			final int value = r.nextInt(65536);
+			buffer.add(u0, u1, v, c, value);
+			access.setPosition(new long[] { u0, v, c });
+			for (long u = u0; u <= u1; u++) {
+				access.get().set(value);
+				access.fwd(0);
+			}
+		}
+		buffer.flush();
+		final Cursor<UnsignedShortType> cursor = expected.localizingCursor();
+		final RandomAccess<UnsignedShortType> actual = img.randomAccess();
+		while (cursor.hasNext()) {
+			final int value = cursor.next().get();
+			actual.setPosition(cursor);
+			if (actual.get().get() != value) {
+				fail("Differs at " + cursor.getLongPosition(0) + "," +
+					cursor.getLongPosition(1) + "," + cursor.getLongPosition(2));
+			}
+		}
+	}
+
+	// -- Helper methods --
+
+	private Dataset create(final Img<UnsignedShortType> img,
+		final AxisType... axes)
+	{
+		return datasetService.create(new ImgPlus<UnsignedShortType>(img, "test",
+			axes));
+	}
+
+	private static Img<UnsignedShortType> cellImg(final long... dims) {
+		return new CellImgFactory<UnsignedShortType>(new UnsignedShortType(),
+			CELL_SIZE).create(dims);
+	}
+
+	private static int value(final Img<UnsignedShortType> img, final long u,
+		final long v)
+	{
+		final RandomAccess<UnsignedShortType> access = img.randomAccess();
+		access.setPosition(u, 0);
+		access.setPosition(v, 1);
+		return access.get().get();
+	}
+
+}
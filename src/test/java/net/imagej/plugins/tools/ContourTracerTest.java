@@ -0,0 +1,159 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2016 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.plugins.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import net.imagej.Dataset;
+import net.imagej.DatasetService;
+import net.imagej.ImgPlus;
+import net.imagej.axis.Axes;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+
+/**
+ * Tests {@link ContourTracer}.
+ */
+public class ContourTracerTest {
+
+	private Context context;
+	private DatasetService datasetService;
+
+	@Before
+	public void setUp() {
+		context = new Context(DatasetService.class);
+		datasetService = context.service(DatasetService.class);
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Test
+	public void testSquare() {
+		final Img<UnsignedByteType> img = ArrayImgs.unsignedBytes(40, 30);
+		fillRect(img, 10, 5, 19, 14, 1);
+		final ContourTracer tracer = tracer(img);
+		assertTrue(tracer.trace(15, 10));
+		assertOutline(tracer, 10, 5, 20, 5, 20, 15, 10, 15);
+	}
+
+	@Test
+	public void testHoleIsSkipped() {
+		final Img<UnsignedByteType> img = ArrayImgs.unsignedBytes(40, 30);
+		fillRect(img, 10, 5, 29, 24, 1);
+		fillRect(img, 15, 10, 24, 19, 0);
+		// an island in the hole is another region
+		fillRect(img, 19, 14, 20, 15, 1);
+		final ContourTracer tracer = tracer(img);
+		// NB - the seed lies left of the hole, on the same line
+		assertTrue(tracer.trace(12, 15));
+		assertOutline(tracer, 10, 5, 30, 5, 30, 25, 10, 25);
+	}
+
+	@Test
+	public void testConnectivity() {
+		final Img<UnsignedByteType> img = ArrayImgs.unsignedBytes(12, 12);
+		// two squares touching at a corner only
+		fillRect(img, 2, 2, 5, 5, 1);
+		fillRect(img, 6, 6, 9, 9, 1);
+		final ContourTracer tracer = tracer(img);
+		tracer.setEightConnected(false);
+		assertTrue(tracer.trace(3, 3));
+		assertOutline(tracer, 2, 2, 6, 2, 6, 6, 2, 6);
+		tracer.setEightConnected(true);
+		assertTrue(tracer.trace(3, 3));
+		// NB - the outline passes through the shared corner twice
+		assertOutline(tracer, 2, 2, 6, 2, 6, 6, 10, 6, 10, 10, 6, 10, 6, 6, 2, 6);
+	}
+
+	@Test
+	public void testSeedOutsidePlane() {
+		final ContourTracer tracer = tracer(ArrayImgs.unsignedBytes(8, 8));
+		assertFalse(tracer.trace(-1, 3));
+		assertFalse(tracer.trace(3, 8));
+		assertEquals(0, tracer.getVertexCount());
+	}
+
+	// -- Helper methods --
+
+	private ContourTracer tracer(final Img<UnsignedByteType> img) {
+		final Dataset dataset = datasetService.create(
+			new ImgPlus<UnsignedByteType>(img, "test", Axes.X, Axes.Y));
+		return new ContourTracer(new PlaneAccessor(dataset, 0, 1, new long[2]));
+	}
+
+	private static void fillRect(final Img<UnsignedByteType> img,
+		final long u0, final long v0, final long u1, final long v1,
+		final int value)
+	{
+		final RandomAccess<UnsignedByteType> access = img.randomAccess();
+		for (long v = v0; v <= v1; v++) {
+			for (long u = u0; u <= u1; u++) {
+				access.setPosition(new long[] { u, v });
+				access.get().set(value);
+			}
+		}
+	}
+
+	/** Checks the traced vertices, as (u,v) pairs, ignoring where they start. */
+	private static void assertOutline(final ContourTracer tracer,
+		final long... expected)
+	{
+		final int count = expected.length / 2;
+		assertEquals(count, tracer.getVertexCount());
+		int start = -1;
+		for (int i = 0; i < count; i++) {
+			if (tracer.getVertexU(i) == expected[0] &&
+				tracer.getVertexV(i) == expected[1]) start = i;
+		}
+		assertTrue("Missing first vertex", start >= 0);
+		for (int k = 0; k < count; k++) {
+			final int i = (start + k) % count;
+			assertEquals("u of vertex " + k, expected[2 * k],
+				tracer.getVertexU(i));
+			assertEquals("v of vertex " + k, expected[2 * k + 1],
+				tracer.getVertexV(i));
+		}
+	}
+
+}
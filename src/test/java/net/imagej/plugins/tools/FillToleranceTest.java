@@ -0,0 +1,104 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2016 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.plugins.tools;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link FillTolerance}.
+ */
+public class FillToleranceTest {
+
+	@Test
+	public void testFormatParseRoundTrip() {
+		final double[][] lists =
+			{ { 0 }, { 5 }, { 0, 2.5, 10 }, { 1e-3, 65535, 0.1 } };
+		for (final double[] amounts : lists) {
+			final String text = FillTolerance.formatAmounts(amounts);
+			assertArrayEquals(text, amounts, FillTolerance.parseAmounts(text), 0);
+		}
+		assertEquals("0, 2.5, 10", FillTolerance.formatAmounts(new double[] { 0,
+			2.5, 10 }));
+		assertArrayEquals(new double[] { 3, 4 }, FillTolerance.parseAmounts(
+			" 3 ,4"), 0);
+	}
+
+	@Test
+	public void testParseInvalid() {
+		for (final String text : new String[] { "", "a", "1,,2", "1,", "NaN",
+			"1; 2" })
+		{
+			try {
+				FillTolerance.parseAmounts(text);
+				fail("Parsed \"" + text + "\"");
+			}
+			catch (final NumberFormatException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void testLastAmountRepeats() {
+		final FillTolerance tolerance =
+			new FillTolerance(new double[] { 1, -4 }, false);
+		assertEquals(1, tolerance.getAmount(0), 0);
+		assertEquals(4, tolerance.getAmount(1), 0);
+		assertEquals(4, tolerance.getAmount(2), 0);
+		assertEquals(4, tolerance.getAmount(7), 0);
+
+		final double[] min = new double[3], max = new double[3];
+		tolerance.bounds(new double[] { 10, 20, 30 }, min, max);
+		assertArrayEquals(new double[] { 9, 16, 26 }, min, 0);
+		assertArrayEquals(new double[] { 11, 24, 34 }, max, 0);
+	}
+
+	@Test
+	public void testPercentBounds() {
+		final FillTolerance tolerance =
+			new FillTolerance(new double[] { 10, 50 }, true);
+		final double[] min = new double[3], max = new double[3];
+		tolerance.bounds(new double[] { 200, -40, 0 }, min, max);
+		assertArrayEquals(new double[] { 180, -60, 0 }, min, 1e-12);
+		assertArrayEquals(new double[] { 220, -20, 0 }, max, 1e-12);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNoAmounts() {
+		new FillTolerance(new double[0], false);
+	}
+
+}
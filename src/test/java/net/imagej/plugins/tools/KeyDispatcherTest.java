@@ -0,0 +1,244 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2016 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.plugins.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.display.Display;
+import org.scijava.display.event.input.KyPressedEvent;
+import org.scijava.input.KeyCode;
+import org.scijava.log.LogService;
+import org.scijava.log.StderrLogService;
+import org.scijava.plugin.PluginInfo;
+import org.scijava.plugin.event.PluginsAddedEvent;
+import org.scijava.service.Service;
+import org.scijava.tool.AbstractTool;
+import org.scijava.tool.Tool;
+
+/**
+ * Tests {@link KeyDispatcher}.
+ */
+public class KeyDispatcherTest {
+
+	/** The always active tools offered to the dispatcher. */
+	private final List<Tool> tools = new ArrayList<Tool>();
+
+	/** Names of the handlers given key presses, in order. */
+	private final List<String> calls = new ArrayList<String>();
+
+	private KeyDispatcher dispatcher;
+	private Display<?> display;
+
+	@Before
+	public void setUp() {
+		final LogService log = new StderrLogService();
+		dispatcher = new KeyDispatcher() {
+
+			@Override
+			protected List<Tool> getAlwaysActiveTools() {
+				return tools;
+			}
+
+			@Override
+			public LogService log() {
+				return log;
+			}
+		};
+		display = (Display<?>) Proxy.newProxyInstance(getClass()
+			.getClassLoader(), new Class<?>[] { Display.class },
+			new InvocationHandler() {
+
+				@Override
+				public Object invoke(final Object proxy, final Method method,
+					final Object[] args)
+				{
+					return null;
+				}
+			});
+	}
+
+	@Test
+	public void testRouting() {
+		tools.add(new Handler("code", new KeyCode[] { KeyCode.A }, new char[0]));
+		tools.add(new Handler("char", new KeyCode[0], new char[] { 'b',
+			'\u00e9' }));
+		tools.add(new Handler("all", null, new char[0]));
+		tools.add(new Handler("none", new KeyCode[0], new char[0]));
+
+		press(KeyCode.A, 'a');
+		assertCalls("code", "all");
+		press(KeyCode.B, 'b');
+		assertCalls("char", "all");
+		press(KeyCode.E, '\u00e9');
+		assertCalls("char", "all");
+		press(KeyCode.C, 'c');
+		assertCalls("all");
+	}
+
+	@Test
+	public void testPriorityAndConsumption() {
+		tools.add(new Handler("first", new KeyCode[] { KeyCode.A }, new char[0]));
+		final Handler consumer =
+			new Handler("consumer", null, new char[] { 'a' });
+		consumer.consume = true;
+		tools.add(consumer);
+		tools.add(new Handler("last", new KeyCode[] { KeyCode.A }, new char[0]));
+
+		press(KeyCode.A, 'a');
+		assertCalls("first", "consumer");
+	}
+
+	@Test
+	public void testAppFrame() {
+		final Handler displayOnly =
+			new Handler("display", new KeyCode[] { KeyCode.A }, new char[0]);
+		displayOnly.appFrame = false;
+		tools.add(displayOnly);
+		tools.add(new Handler("frame", new KeyCode[] { KeyCode.A }, new char[0]));
+
+		press(KeyCode.A, 'a');
+		assertCalls("frame");
+		dispatcher.onKeyDown(new KyPressedEvent(display, null, 0, 0, 'a',
+			KeyCode.A));
+		assertCalls("display", "frame");
+	}
+
+	@Test
+	public void testOverflow() {
+		for (int i = 0; i < Long.SIZE; i++) {
+			tools.add(new Handler("h" + i, new KeyCode[] { KeyCode.A },
+				new char[0]));
+		}
+		final Handler hidden =
+			new Handler("hidden", new KeyCode[] { KeyCode.B }, new char[0]);
+		hidden.appFrame = false;
+		tools.add(hidden);
+		tools.add(new Handler("b", new KeyCode[] { KeyCode.B }, new char[0]));
+		tools.add(new Handler("any", null, new char[0]));
+
+		press(KeyCode.B, 'b');
+		assertCalls("b", "any");
+		press(KeyCode.A, 'a');
+		assertEquals(Long.SIZE + 1, calls.size());
+		assertEquals("h0", calls.get(0));
+		assertEquals("any", calls.get(Long.SIZE));
+	}
+
+	@Test
+	public void testRebuildWhenToolsChange() {
+		tools.add(new Handler("a", new KeyCode[] { KeyCode.A }, new char[0]));
+		press(KeyCode.A, 'a');
+		assertCalls("a");
+
+		tools.add(0, new Handler("new", new KeyCode[] { KeyCode.A },
+			new char[0]));
+		dispatcher.onEvent(new PluginsAddedEvent(new PluginInfo<Service>(
+			StderrLogService.class, Service.class)));
+		assertTrue(dispatcher.isInitialized());
+		dispatcher.onEvent(new PluginsAddedEvent(new PluginInfo<Tool>(
+			Handler.class, Tool.class)));
+		assertFalse(dispatcher.isInitialized());
+		press(KeyCode.A, 'a');
+		assertCalls("new", "a");
+	}
+
+	// -- Helper methods --
+
+	/** Presses a key in the app frame. */
+	private void press(final KeyCode code, final char c) {
+		dispatcher.onKeyDown(new KyPressedEvent(null, null, 0, 0, c, code));
+	}
+
+	/** Checks which handlers saw the key presses since the last check. */
+	private void assertCalls(final String... names) {
+		assertEquals(Arrays.asList(names), calls);
+		calls.clear();
+	}
+
+	// -- Helper classes --
+
+	/** Handler noting the key presses it is given. */
+	private class Handler extends AbstractTool implements KeyHandler {
+
+		private final String name;
+		private final KeyCode[] codes;
+		private final char[] chars;
+		private boolean appFrame = true;
+		private boolean consume;
+
+		private Handler(final String name, final KeyCode[] codes,
+			final char[] chars)
+		{
+			this.name = name;
+			this.codes = codes;
+			this.chars = chars;
+		}
+
+		@Override
+		public boolean isAlwaysActive() {
+			return true;
+		}
+
+		@Override
+		public boolean isActiveInAppFrame() {
+			return appFrame;
+		}
+
+		@Override
+		public KeyCode[] getKeyCodes() {
+			return codes;
+		}
+
+		@Override
+		public char[] getKeyCharacters() {
+			return chars;
+		}
+
+		@Override
+		public void handleKey(final KyPressedEvent evt) {
+			calls.add(name);
+			if (consume) evt.consume();
+		}
+	}
+
+}
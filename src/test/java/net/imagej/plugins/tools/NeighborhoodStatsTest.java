@@ -0,0 +1,136 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2016 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.plugins.tools;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link NeighborhoodStats}.
+ */
+public class NeighborhoodStatsTest {
+
+	private static final int WIDTH = 40, HEIGHT = 30;
+
+	@Test
+	public void testRandomWalk() {
+		final Img<FloatType> img = ArrayImgs.floats(WIDTH, HEIGHT);
+		final Random r = new Random(3);
+		for (final FloatType t : img)
+			t.set(r.nextDouble() < 0.05 ? Float.NaN : r.nextInt(100));
+		for (final int size : new int[] { 1, 3, 7 }) {
+			assertWalk(img, size, new Random(size));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testEvenSize() {
+		new NeighborhoodStats(4);
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Moves the window along a random walk of single steps, diagonal ones
+	 * included, with the odd jump, over the image and past its edges, and
+	 * compares each window with statistics computed from scratch.
+	 */
+	private static void assertWalk(final Img<FloatType> img, final int size,
+		final Random r)
+	{
+		final NeighborhoodStats stats = new NeighborhoodStats(size);
+		final RandomAccess<FloatType> access = img.randomAccess();
+		final int margin = size / 2 + 2;
+		long x = WIDTH / 2, y = HEIGHT / 2;
+		for (int i = 0; i < 2000; i++) {
+			if (r.nextInt(50) == 0) {
+				x = r.nextInt(WIDTH);
+				y = r.nextInt(HEIGHT);
+			}
+			else {
+				x = step(x, r.nextInt(3) - 1, WIDTH, margin);
+				y = step(y, r.nextInt(3) - 1, HEIGHT, margin);
+			}
+			stats.update(access, 0, 1, WIDTH, HEIGHT, x, y);
+			assertWindow(img, size, x, y, stats, "step " + i + " of size " + size);
+		}
+	}
+
+	/** Takes a step, turning back where it would go too far past an edge. */
+	private static long step(final long pos, final int delta, final int length,
+		final int margin)
+	{
+		final long next = pos + delta;
+		return next < -margin || next >= length + margin ? pos - delta : next;
+	}
+
+	private static void assertWindow(final Img<FloatType> img, final int size,
+		final long x, final long y, final NeighborhoodStats stats,
+		final String message)
+	{
+		final RandomAccess<FloatType> access = img.randomAccess();
+		int count = 0;
+		double sum = 0, sumSq = 0;
+		double min = Double.NaN, max = Double.NaN;
+		for (long v = y - size / 2; v <= y + size / 2; v++) {
+			for (long u = x - size / 2; u <= x + size / 2; u++) {
+				if (u < 0 || u >= WIDTH || v < 0 || v >= HEIGHT) continue;
+				access.setPosition(u, 0);
+				access.setPosition(v, 1);
+				final double value = access.get().getRealDouble();
+				if (Double.isNaN(value)) continue;
+				if (count == 0 || value < min) min = value;
+				if (count == 0 || value > max) max = value;
+				count++;
+				sum += value;
+				sumSq += value * value;
+			}
+		}
+		assertEquals(message, count, stats.getCount());
+		assertEquals(message, min, stats.getMin(), 0);
+		assertEquals(message, max, stats.getMax(), 0);
+		assertEquals(message, count == 0 ? Double.NaN : sum / count, stats
+			.getMean(), 1e-9);
+		final double stdDev = count < 2 ? Double.NaN : Math.sqrt(Math.max(0,
+			(sumSq - sum * sum / count) / (count - 1)));
+		assertEquals(message, stdDev, stats.getStdDev(), 1e-9);
+	}
+
+}
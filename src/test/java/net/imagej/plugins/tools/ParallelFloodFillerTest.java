@@ -0,0 +1,157 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2016 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.plugins.tools;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import net.imagej.axis.Axes;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgFactory;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link ParallelFloodFiller}.
+ */
+public class ParallelFloodFillerTest extends AbstractFloodFillerTest {
+
+	private static final int WIDTH = 1300, HEIGHT = 1100;
+	private static final int THREADS = 4;
+
+	@Test
+	public void testFill4() {
+		for (final ImgFactory<UnsignedByteType> factory : factories(200)) {
+			assertSameFill(factory, 1, false, 2, FillTolerance.EXACT);
+		}
+	}
+
+	@Test
+	public void testFill8() {
+		for (final ImgFactory<UnsignedByteType> factory : factories(200)) {
+			assertSameFill(factory, 2, true, 2, FillTolerance.EXACT);
+		}
+	}
+
+	@Test
+	public void testTolerance() {
+		final FillTolerance tolerance = new FillTolerance(2, false);
+		for (final ImgFactory<UnsignedByteType> factory : factories(200)) {
+			assertSameFill(factory, 9, false, 10, tolerance);
+			assertSameFill(factory, 9, true, 10, tolerance);
+		}
+	}
+
+	@Test
+	public void testInterrupt() throws InterruptedException {
+		for (final ImgFactory<UnsignedByteType> factory : factories(200)) {
+			final Img<UnsignedByteType> img = factory.create(WIDTH, HEIGHT);
+			final ParallelFloodFiller filler =
+				new ParallelFloodFiller(tool(img, Axes.X, Axes.Y), THREADS);
+			Thread.currentThread().interrupt();
+			filler.fill(0, 0, new long[2], 4);
+			assertTrue("Interrupt status lost", Thread.interrupted());
+			assertTrue("Fill not cancelled", filler.isCancelled());
+
+			// no tile may write once the fill has returned
+			final Img<UnsignedByteType> returned = img.copy();
+			Thread.sleep(100);
+			final Cursor<UnsignedByteType> expected = returned.localizingCursor();
+			final RandomAccess<UnsignedByteType> actual = img.randomAccess();
+			while (expected.hasNext()) {
+				final int value = expected.next().get();
+				actual.setPosition(expected);
+				if (actual.get().get() != value) {
+					fail(factory + " written after the fill at " +
+						expected.getLongPosition(0) + "," + expected.getLongPosition(1));
+				}
+			}
+		}
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Fills copies of a random image with the scanline and the parallel filler
+	 * and checks that they agree. Most pixels are zero, and the fill starts on
+	 * one of them, so that it spreads over many tiles.
+	 */
+	private void assertSameFill(final ImgFactory<UnsignedByteType> factory,
+		final long seed, final boolean eight, final int levels,
+		final FillTolerance tolerance)
+	{
+		final Img<UnsignedByteType> serial = factory.create(WIDTH, HEIGHT);
+		final Random r = new Random(seed);
+		for (final UnsignedByteType t : serial)
+			t.set(r.nextDouble() < 0.8 ? 0 : 1 + r.nextInt(levels - 1));
+		final RandomAccess<UnsignedByteType> seedAccess = serial.randomAccess();
+		do {
+			seedAccess.setPosition(r.nextInt(WIDTH), 0);
+			seedAccess.setPosition(r.nextInt(HEIGHT), 1);
+		}
+		while (seedAccess.get().get() != 0);
+		final Img<UnsignedByteType> parallel = serial.copy();
+		final long u0 = seedAccess.getLongPosition(0);
+		final long v0 = seedAccess.getLongPosition(1);
+
+		final AbstractFloodFiller serialFiller =
+			new ScanlineFloodFiller(tool(serial, Axes.X, Axes.Y));
+		serialFiller.setTolerance(tolerance);
+		serialFiller.fill(u0, v0, new long[2], eight ? 8 : 4);
+		final AbstractFloodFiller parallelFiller =
+			new ParallelFloodFiller(tool(parallel, Axes.X, Axes.Y), THREADS);
+		parallelFiller.setTolerance(tolerance);
+		parallelFiller.fill(u0, v0, new long[2], eight ? 8 : 4);
+
+		final Cursor<UnsignedByteType> expected = serial.localizingCursor();
+		final RandomAccess<UnsignedByteType> actual = parallel.randomAccess();
+		long filled = 0;
+		while (expected.hasNext()) {
+			final int value = expected.next().get();
+			actual.setPosition(expected);
+			if (actual.get().get() != value) {
+				fail(factory + " differs at " + expected.getLongPosition(0) + "," +
+					expected.getLongPosition(1));
+			}
+			if (value == FILL_VALUE) filled++;
+		}
+		final long tilePixels =
+			ParallelFloodFiller.TILE_SIZE * ParallelFloodFiller.TILE_SIZE;
+		assertTrue("Fill within one tile", filled > tilePixels);
+	}
+
+}
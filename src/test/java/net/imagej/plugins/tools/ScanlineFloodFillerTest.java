@@ -0,0 +1,91 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2016 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.plugins.tools;
+
+import java.util.Random;
+
+import net.imagej.axis.Axes;
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgFactory;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link ScanlineFloodFiller}.
+ */
+public class ScanlineFloodFillerTest extends AbstractFloodFillerTest {
+
+	private static final int WIDTH = 160, HEIGHT = 120;
+
+	@Test
+	public void testFill4() {
+		for (final ImgFactory<UnsignedByteType> factory : factories(32)) {
+			for (int seed = 0; seed < 5; seed++) {
+				assertFill(factory, seed, false);
+			}
+		}
+	}
+
+	@Test
+	public void testFill8() {
+		for (final ImgFactory<UnsignedByteType> factory : factories(32)) {
+			for (int seed = 0; seed < 5; seed++) {
+				assertFill(factory, seed, true);
+			}
+		}
+	}
+
+	// -- Helper methods --
+
+	/** Fills a random image and compares it to a breadth first fill. */
+	private void assertFill(final ImgFactory<UnsignedByteType> factory,
+		final long seed, final boolean eight)
+	{
+		final Img<UnsignedByteType> img = factory.create(WIDTH, HEIGHT);
+		final Random r = new Random(seed);
+		for (final UnsignedByteType t : img)
+			t.set(r.nextDouble() < 0.4 ? 1 : 0);
+		final int u0 = r.nextInt(WIDTH), v0 = r.nextInt(HEIGHT);
+		final boolean[] expected =
+			reference(img, new long[] { u0, v0 }, 2, eight ? 2 : 1);
+		final Img<UnsignedByteType> original = img.copy();
+
+		final ScanlineFloodFiller filler =
+			new ScanlineFloodFiller(tool(img, Axes.X, Axes.Y));
+		if (eight) filler.fill8(u0, v0, new long[2]);
+		else filler.fill4(u0, v0, new long[2]);
+
+		assertFilled(factory.toString(), original, img, expected);
+	}
+
+}
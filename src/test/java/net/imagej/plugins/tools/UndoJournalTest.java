@@ -0,0 +1,237 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2016 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.plugins.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Random;
+
+import net.imagej.Dataset;
+import net.imagej.DatasetService;
+import net.imagej.ImgPlus;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.img.planar.PlanarImgs;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+
+/**
+ * Tests {@link UndoJournal}.
+ */
+public class UndoJournalTest {
+
+	private Context context;
+	private DatasetService datasetService;
+
+	@Before
+	public void setUp() {
+		context = new Context(DatasetService.class);
+		datasetService = context.service(DatasetService.class);
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Test
+	public void testRestoreUndoesEdit() throws IOException {
+		final Img<UnsignedByteType> img =
+			randomize(ArrayImgs.unsignedBytes(200, 150, 3));
+		final Img<UnsignedByteType> original = img.copy();
+		final Dataset dataset = create(img, Axes.X, Axes.Y, Axes.CHANNEL);
+		final UndoJournal journal = new UndoJournal();
+		edit(dataset, journal);
+		assertFalse(journal.isEmpty());
+		journal.finish();
+		assertNotNull(journal.restore(dataset));
+		assertSameValues(original, img);
+		journal.dispose();
+	}
+
+	@Test
+	public void testRestoreCancelledStroke() throws IOException {
+		final UnsignedByteType type = new UnsignedByteType();
+		assertStrokeRestored(ArrayImgs.unsignedBytes(200, 150, 2));
+		assertStrokeRestored(PlanarImgs.unsignedShorts(200, 150, 2));
+		assertStrokeRestored(new CellImgFactory<UnsignedByteType>(type, 32)
+			.create(200, 150, 2));
+	}
+
+	@Test
+	public void testRestoreAfterSpill() throws IOException {
+		final Img<UnsignedShortType> img =
+			randomize(PlanarImgs.unsignedShorts(300, 200, 2));
+		final Img<UnsignedShortType> original = img.copy();
+		final Dataset dataset = create(img, Axes.X, Axes.Y, Axes.CHANNEL);
+		final UndoJournal held = new UndoJournal();
+		held.setSpillThreshold(-1);
+		edit(create(img.copy(), Axes.X, Axes.Y, Axes.CHANNEL), held);
+		final UndoJournal spilled = new UndoJournal();
+		spilled.setSpillThreshold(0);
+		edit(dataset, spilled);
+		// NB - values are spilled while recording, not just when finished
+		assertEquals(held.getValueCount(), spilled.getValueCount());
+		assertTrue(spilled.getMemorySize() < held.getMemorySize());
+		spilled.finish();
+		spilled.restore(dataset);
+		assertSameValues(original, img);
+		held.dispose();
+		spilled.dispose();
+	}
+
+	@Test
+	public void testMatches() {
+		final Dataset dataset =
+			create(ArrayImgs.unsignedBytes(64, 64), Axes.X, Axes.Y);
+		final UndoJournal journal = new UndoJournal();
+		edit(dataset, journal);
+		assertTrue(journal.matches(dataset));
+		assertFalse(journal.matches(create(ArrayImgs.unsignedBytes(64, 65),
+			Axes.X, Axes.Y)));
+		assertFalse(journal.matches(create(ArrayImgs.unsignedShorts(64, 64),
+			Axes.X, Axes.Y)));
+		journal.dispose();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRestoreToOtherDataset() throws IOException {
+		final UndoJournal journal = new UndoJournal();
+		edit(create(ArrayImgs.unsignedBytes(64, 64), Axes.X, Axes.Y), journal);
+		journal.finish();
+		try {
+			journal.restore(create(ArrayImgs.floats(64, 64), Axes.X, Axes.Y));
+		}
+		finally {
+			journal.dispose();
+		}
+	}
+
+	@Test
+	public void testEmptyJournal() throws IOException {
+		final Dataset dataset =
+			create(ArrayImgs.unsignedBytes(16, 16), Axes.X, Axes.Y);
+		final UndoJournal journal = new UndoJournal();
+		assertTrue(journal.isEmpty());
+		journal.finish();
+		assertNull(journal.restore(dataset));
+	}
+
+	// -- Helper methods --
+
+	private <T extends RealType<T> & NativeType<T>> Dataset create(
+		final Img<T> img, final AxisType... axes)
+	{
+		return datasetService.create(new ImgPlus<T>(img, "test", axes));
+	}
+
+	private static <T extends RealType<T>> Img<T> randomize(final Img<T> img) {
+		final Random r = new Random(img.size());
+		for (final T t : img)
+			t.setReal(r.nextInt(256));
+		return img;
+	}
+
+	/** Draws a set of random runs, recording them in the journal. */
+	private static void edit(final Dataset dataset, final UndoJournal journal) {
+		final PlaneAccessor access =
+			new PlaneAccessor(dataset, 0, 1, new long[dataset.numDimensions()]);
+		access.setJournal(journal);
+		final Random r = new Random(7);
+		final double[] values = new double[access.getChannelCount()];
+		for (int i = 0; i < 500; i++) {
+			final long v = r.nextInt((int) access.getHeight());
+			final long u0 = r.nextInt((int) access.getWidth());
+			final long u1 = Math.min(access.getWidth() - 1, u0 + r.nextInt(100));
+			for (int c = 0; c < values.length; c++)
+				values[c] = 1000 + i;
+			access.setRun(u0, u1, v, values);
+		}
+	}
+
+	/**
+	 * Draws a wide stroke running off the edges of the image, the way the line
+	 * tools do, and cancels it by restoring its journal.
+	 */
+	private <T extends RealType<T> & NativeType<T>> void assertStrokeRestored(
+		final Img<T> img) throws IOException
+	{
+		randomize(img);
+		final Img<T> original = img.copy();
+		final Dataset dataset = create(img, Axes.X, Axes.Y, Axes.CHANNEL);
+		final UndoJournal journal = new UndoJournal();
+		final PlaneAccessor access = new PlaneAccessor(dataset, 0, 1, new long[3]);
+		access.setJournal(journal);
+		access.setWriteCombining(true);
+		final double[] values = { 300, 300 };
+		final BrushStamp stamp = BrushStamp.get(BrushStamp.Shape.CIRCLE, 41);
+		stamp.stampLine(access, -20, 10, 220, 70, values);
+		stamp.stampLine(access, 220, 70, 30, 170, values);
+		access.flush();
+		assertTrue(journal.getValueCount() > 2 * 240 * 30);
+
+		assertNotNull(journal.restore(dataset));
+		assertSameValues(original, img);
+		journal.dispose();
+	}
+
+	private static void assertSameValues(final Img<?> expected,
+		final Img<?> actual)
+	{
+		final Cursor<?> cursor = expected.localizingCursor();
+		final RandomAccess<?> access = actual.randomAccess();
+		while (cursor.hasNext()) {
+			final RealType<?> value = (RealType<?>) cursor.next();
+			access.setPosition(cursor);
+			assertEquals(value.getRealDouble(),
+				((RealType<?>) access.get()).getRealDouble(), 0);
+		}
+	}
+
+}
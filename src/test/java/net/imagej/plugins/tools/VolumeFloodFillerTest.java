@@ -0,0 +1,108 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2016 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.plugins.tools;
+
+import java.util.Random;
+
+import net.imagej.axis.Axes;
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgFactory;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link VolumeFloodFiller}.
+ */
+public class VolumeFloodFillerTest extends AbstractFloodFillerTest {
+
+	/** Dimensions of the test images: X, Y, Z and TIME. */
+	private static final int[] DIMS = { 40, 30, 8, 3 };
+
+	@Test
+	public void testFill6() {
+		for (final ImgFactory<UnsignedByteType> factory : factories(16)) {
+			assertFill(factory, 1, 6, false);
+		}
+	}
+
+	@Test
+	public void testFill18() {
+		for (final ImgFactory<UnsignedByteType> factory : factories(16)) {
+			assertFill(factory, 2, 18, false);
+		}
+	}
+
+	@Test
+	public void testFill26() {
+		for (final ImgFactory<UnsignedByteType> factory : factories(16)) {
+			assertFill(factory, 3, 26, false);
+		}
+	}
+
+	@Test
+	public void testFillAcrossTime() {
+		for (final ImgFactory<UnsignedByteType> factory : factories(16)) {
+			assertFill(factory, 4, 6, true);
+			assertFill(factory, 5, 26, true);
+		}
+	}
+
+	// -- Helper methods --
+
+	/** Fills a random image and compares it to a breadth first fill. */
+	private void assertFill(final ImgFactory<UnsignedByteType> factory,
+		final long seed, final int connectivity, final boolean includeTime)
+	{
+		final Img<UnsignedByteType> img = factory.create(DIMS[0], DIMS[1],
+			DIMS[2], DIMS[3]);
+		final Random r = new Random(seed);
+		for (final UnsignedByteType t : img)
+			t.set(r.nextDouble() < 0.6 ? 0 : 1);
+		final long[] position = new long[DIMS.length];
+		for (int d = 0; d < DIMS.length; d++)
+			position[d] = r.nextInt(DIMS[d]);
+		final Img<UnsignedByteType> original = img.copy();
+		final int maxSteps = connectivity == 6 ? 1 : connectivity == 18 ? 2 : 3;
+		final boolean[] expected =
+			reference(img, position, includeTime ? 4 : 3, maxSteps);
+
+		final VolumeFloodFiller filler = new VolumeFloodFiller(tool(img, Axes.X,
+			Axes.Y, Axes.Z, Axes.TIME));
+		filler.setIncludeTime(includeTime);
+		filler.fill(position[0], position[1], position, connectivity);
+
+		assertFilled(factory + " " + connectivity + "-connected fill", original,
+			img, expected);
+	}
+
+}